@@ -0,0 +1,51 @@
+package com.makesvaporware.diceparserjava.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.makesvaporware.diceparserjava.evaluator.Evaluator;
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.Parser;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Evaluation of a pre-parsed expression, with and without building the display string
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+    @Param({ "1d20", "4d6kh3 + 2", "(1d20 + 5) * 2 - 1d4 / 2", "8d6mi2ro<3e6kh5pl1 + 3d8rr1 * 1.5" })
+    public String expression;
+
+    private Evaluator evaluator;
+
+    @Setup
+    public void setup() throws Exception {
+        ASTNode root = new Parser(new Lexer(expression).lex()).parse();
+        evaluator = new Evaluator(root, RandomSource.seeded(42));
+    }
+
+    @Benchmark
+    public String evaluate() throws Exception {
+        return evaluator.evaluate().getDisplayString();
+    }
+
+    @Benchmark
+    public float evaluateValue() throws Exception {
+        return evaluator.evaluateValue();
+    }
+}
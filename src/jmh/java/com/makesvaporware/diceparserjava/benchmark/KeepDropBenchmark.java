@@ -0,0 +1,51 @@
+package com.makesvaporware.diceparserjava.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.makesvaporware.diceparserjava.evaluator.Evaluator;
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.parser.Parser;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Keep/drop unions up to the dice limit, where ranking the pool dominates
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeepDropBenchmark {
+    @Param({ "10", "1000", "99000" })
+    public int numDice;
+
+    @Param({ "6", "100" })
+    public int numSides;
+
+    @Param({ "kh3", "kh3kl3", "k>3", "pl3", "ph2pl2", "kh3pl1" })
+    public String modifiers;
+
+    private Evaluator evaluator;
+
+    @Setup
+    public void setup() throws Exception {
+        String expression = numDice + "d" + numSides + modifiers;
+        evaluator = new Evaluator(new Parser(new Lexer(expression).lex()).parse(), RandomSource.seeded(42));
+    }
+
+    @Benchmark
+    public float evaluateValue() throws Exception {
+        return evaluator.evaluateValue();
+    }
+}
@@ -0,0 +1,54 @@
+package com.makesvaporware.diceparserjava.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.makesvaporware.diceparserjava.evaluator.Evaluator;
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.parser.Parser;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Per-modifier cost across pool sizes. Explode/reroll pools are capped at 80000 base dice
+// so the extra dice they roll stay under the 99999 dice limit.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModifierBenchmark {
+    @Param({ "10", "1000", "80000" })
+    public int numDice;
+
+    @Param({ "", "e6", "rr1", "ro<3", "ra6", "mi3ma5", "kh3" })
+    public String modifiers;
+
+    private Evaluator evaluator;
+
+    @Setup
+    public void setup() throws Exception {
+        String expression = numDice + "d6" + modifiers;
+        evaluator = new Evaluator(new Parser(new Lexer(expression).lex()).parse(), RandomSource.seeded(42));
+    }
+
+    @Benchmark
+    public String evaluate() throws Exception {
+        return evaluator.evaluate().getDisplayString();
+    }
+
+    @Benchmark
+    public float evaluateValue() throws Exception {
+        return evaluator.evaluateValue();
+    }
+}
@@ -0,0 +1,68 @@
+package com.makesvaporware.diceparserjava.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.lexer.Token;
+import com.makesvaporware.diceparserjava.lexer.TokenBuffer;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.Parser;
+
+// Front-end cost: lexing and parsing, measured separately
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({ "1d20", "4d6kh3 + 2", "(1d20 + 5) * 2 - 1d4 / 2", "8d6mi2ro<3e6kh5pl1 + 3d8rr1 * 1.5" })
+    public String expression;
+
+    private List<Token> tokens;
+    private final TokenBuffer buffer = new TokenBuffer();
+
+    @Setup
+    public void setup() throws Exception {
+        tokens = new Lexer(expression).lex();
+    }
+
+    @Benchmark
+    public List<Token> lex() throws Exception {
+        return new Lexer(expression).lex();
+    }
+
+    @Benchmark
+    public ASTNode parse() throws Exception {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public ASTNode lexAndParse() throws Exception {
+        return new Parser(new Lexer(expression).lex()).parse();
+    }
+
+    // Reuses one token buffer across calls, so lexing allocates nothing once it has grown
+    @Benchmark
+    public TokenBuffer lexIntoBuffer() throws Exception {
+        return new Lexer(expression).lex(buffer);
+    }
+
+    @Benchmark
+    public ASTNode lexIntoBufferAndParse() throws Exception {
+        return new Parser(new Lexer(expression).lex(buffer)).parse();
+    }
+}
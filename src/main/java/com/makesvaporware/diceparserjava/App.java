@@ -1,12 +1,37 @@
 package com.makesvaporware.diceparserjava;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
+import com.makesvaporware.diceparserjava.batch.BatchEvaluator;
+import com.makesvaporware.diceparserjava.batch.BatchFormat;
+import com.makesvaporware.diceparserjava.batch.BatchStats;
+import com.makesvaporware.diceparserjava.cache.ExpressionCache;
+import com.makesvaporware.diceparserjava.cost.CostAnalyzer;
+import com.makesvaporware.diceparserjava.distribution.Distribution;
+import com.makesvaporware.diceparserjava.distribution.DistributionCalculator;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 import com.makesvaporware.diceparserjava.evaluator.Evaluator;
-import com.makesvaporware.diceparserjava.lexer.Lexer;
-import com.makesvaporware.diceparserjava.parser.Parser;
+import com.makesvaporware.diceparserjava.metrics.InMemoryMetricsRecorder;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.ASTPrinter;
+import com.makesvaporware.diceparserjava.parser.Optimizer;
+import com.makesvaporware.diceparserjava.render.MarkdownRenderer;
+import com.makesvaporware.diceparserjava.render.ResultRenderer;
+import com.makesvaporware.diceparserjava.server.RollServer;
+import com.makesvaporware.diceparserjava.server.ServerLimits;
 
 /**
  * Hello world!
@@ -58,13 +83,60 @@ public class App {
 
                     ----------------------------------------------------------------
 
+                    Type 'dist <expression>' to show the exact odds of each total.
+                    Type 'ast <expression>' to show the parsed and optimized trees and the estimated cost.
                     Type 'help' to bring up this guide.
                     Type 'quit' to quit the program.
 
                     ================================================================
             """;
 
+    private static final String BATCH_USAGE = """
+            Usage: batch [--jsonl] [--unordered] [--threads N] [--max-in-flight N] [--timeout MS] [--display FORMAT]
+                         [--metrics] [FILE]
+              Evaluates one expression per line of FILE (or stdin) and writes one result per line to stdout.
+              --jsonl           Read {"expression": "...", "id": ...} objects and write JSON results
+              --display FORMAT  Breakdown format: markdown, plain, ansi or json (default: markdown)
+              --unordered       Write results as they finish instead of in input order
+              --threads N       Worker threads (default: available processors)
+              --max-in-flight N Records evaluated or waiting to be written at once (default: 1024)
+              --timeout MS      Fail records that take longer than this to roll (default: no limit)
+              --metrics         Print lex/parse/evaluate timings as JSON to stderr when done
+            """;
+
+    private static final String SERVER_USAGE = """
+            Usage: server [--host HOST] [--port N] [--max-length N] [--max-dice N] [--max-batch N] [--timeout MS]
+                          [--metrics]
+              Serves POST /roll, POST /roll/batch and GET /distribution as JSON.
+              Add ?format=plain, ansi or json to a roll to change how its breakdown is displayed.
+              --host HOST       Address to bind (default: 0.0.0.0)
+              --port N          Port to listen on (default: 8080)
+              --max-length N    Longest accepted expression (default: 1000)
+              --max-dice N      Most dice one request is expected to roll (default: 10000)
+              --max-batch N     Most expressions in one batch (default: 1000)
+              --timeout MS      Longest a roll, batch or distribution may take (default: 2000)
+              --metrics         Record timings and counters and serve them at GET /metrics
+            """;
+
+    private static final ExpressionCache EXPRESSION_CACHE = new ExpressionCache();
+    private static final DistributionCalculator DISTRIBUTION_CALCULATOR = new DistributionCalculator();
+
+    // Huge pools only show their first dice at the prompt
+    private static final MarkdownRenderer DISPLAY_RENDERER = new MarkdownRenderer(100);
+
     public static void main(String[] args) {
+        if (args.length > 0 && "batch".equals(args[0])) {
+            System.exit(runBatch(args));
+            return;
+        }
+
+        if (args.length > 0 && "server".equals(args[0])) {
+            int exitCode = runServer(args);
+            if (exitCode != 0)
+                System.exit(exitCode);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         System.out.println("Type a dice expression to evaluate (or 'help' for help, or 'quit' to exit)");
 
@@ -90,18 +162,39 @@ public class App {
                 continue;
             }
 
+            if (input.toLowerCase().startsWith("dist ")) {
+                try {
+                    Distribution distribution = DISTRIBUTION_CALCULATOR
+                            .calculate(EXPRESSION_CACHE.get(input.substring(5)));
+                    System.out.println(distribution);
+                } catch (Exception e) {
+                    System.out.println("Error: " + e.getMessage());
+                }
+                continue;
+            }
+
+            if (input.toLowerCase().startsWith("ast ")) {
+                try {
+                    ASTNode root = EXPRESSION_CACHE.get(input.substring(4));
+                    System.out.println("Parsed:");
+                    System.out.println(ASTPrinter.print(root));
+                    System.out.println("Optimized:");
+                    System.out.println(ASTPrinter.print(Optimizer.optimize(root)));
+                    System.out.println("Cost: " + CostAnalyzer.analyze(root));
+                } catch (Exception e) {
+                    System.out.println("Error: " + e.getMessage());
+                }
+                continue;
+            }
+
             try {
-                Lexer lexer = new Lexer(input);
-                Parser parser = new Parser(lexer.lex());
-                Evaluator evaluator = new Evaluator(parser.parse());
+                Evaluator evaluator = new Evaluator(EXPRESSION_CACHE.get(input));
                 EvaluationResult result = evaluator.evaluate();
 
-                String displayString = result.displayString;
-                String totalString = result.value == (int) result.value ? String.valueOf((int) result.value)
-                        : String.valueOf(result.value);
+                String displayString = DISPLAY_RENDERER.render(result);
 
                 System.out.println(String.format("Rolled: %s", displayString));
-                System.out.println(String.format("Total: %s", totalString));
+                System.out.println(String.format("Total: %s", result.getTotalString()));
 
             } catch (Exception e) {
                 System.out.println("Error: " + e.getMessage());
@@ -110,4 +203,155 @@ public class App {
 
         scanner.close();
     }
+
+    // === BATCH ===
+
+    // Returns the process exit code. Per-record errors are written to the output and do not fail the batch.
+    private static int runBatch(String[] args) {
+        BatchFormat format = BatchFormat.LINES;
+        boolean ordered = true;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxInFlight = BatchEvaluator.DEFAULT_MAX_IN_FLIGHT;
+        long timeout = 0;
+        ResultRenderer renderer = MarkdownRenderer.FULL;
+        InMemoryMetricsRecorder metrics = null;
+        String file = null;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--jsonl":
+                        format = BatchFormat.JSONL;
+                        break;
+                    case "--unordered":
+                        ordered = false;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--max-in-flight":
+                        maxInFlight = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--timeout":
+                        timeout = Long.parseLong(optionValue(args, ++i));
+                        break;
+                    case "--display":
+                        renderer = ResultRenderer.forName(optionValue(args, ++i));
+                        break;
+                    case "--metrics":
+                        metrics = new InMemoryMetricsRecorder();
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || file != null)
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        file = args[i];
+                }
+            }
+
+            if (metrics != null)
+                Metrics.set(metrics);
+
+            BatchEvaluator evaluator = new BatchEvaluator(EXPRESSION_CACHE, threads, maxInFlight, ordered, timeout,
+                    renderer);
+            Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+
+            BatchStats stats;
+            if (file != null && Files.isRegularFile(Path.of(file))) {
+                // Regular files are memory-mapped; pipes and stdin are streamed
+                stats = evaluator.run(Path.of(file), format, output);
+            } else {
+                try (ReadableByteChannel input = file == null ? Channels.newChannel(System.in)
+                        : FileChannel.open(Path.of(file))) {
+                    stats = evaluator.run(input, format, output);
+                }
+            }
+
+            System.err.println("Batch: " + stats);
+            if (metrics != null) {
+                metrics.writeJson(System.err);
+                System.err.println();
+            }
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.print(BATCH_USAGE);
+            return 2;
+        } catch (NoSuchFileException e) {
+            System.err.println("Error: File not found: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    // === SERVER ===
+
+    // Starts the server and returns 0, leaving it running on its own threads, or returns a failing exit code
+    private static int runServer(String[] args) {
+        String host = "0.0.0.0";
+        int port = 8080;
+        int maxLength = ServerLimits.DEFAULT_MAX_EXPRESSION_LENGTH;
+        int maxDice = ServerLimits.DEFAULT_MAX_DICE;
+        int maxBatch = ServerLimits.DEFAULT_MAX_BATCH_SIZE;
+        long timeout = ServerLimits.DEFAULT_TIMEOUT_MILLIS;
+        boolean metrics = false;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host":
+                        host = optionValue(args, ++i);
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--max-length":
+                        maxLength = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--max-dice":
+                        maxDice = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--max-batch":
+                        maxBatch = Integer.parseInt(optionValue(args, ++i));
+                        break;
+                    case "--timeout":
+                        timeout = Long.parseLong(optionValue(args, ++i));
+                        break;
+                    case "--metrics":
+                        metrics = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                }
+            }
+
+            ServerLimits limits = new ServerLimits(maxLength, maxDice, maxBatch, timeout);
+            if (metrics)
+                Metrics.set(new InMemoryMetricsRecorder());
+
+            RollServer server = new RollServer(new InetSocketAddress(host, port), EXPRESSION_CACHE, limits);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+
+            System.err.println("Listening on " + server.getAddress());
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.print(SERVER_USAGE);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static String optionValue(String[] args, int index) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        return args[index];
+    }
 }
@@ -0,0 +1,388 @@
+package com.makesvaporware.diceparserjava.batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.makesvaporware.diceparserjava.cache.ExpressionCache;
+import com.makesvaporware.diceparserjava.evaluator.CancellationToken;
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+import com.makesvaporware.diceparserjava.evaluator.Evaluator;
+import com.makesvaporware.diceparserjava.json.Json;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.render.MarkdownRenderer;
+import com.makesvaporware.diceparserjava.render.ResultRenderer;
+
+// Evaluates a stream of expressions on a worker pool and writes one result per record.
+// The calling thread reads records, submits them in chunks and writes finished results; once
+// maxInFlight records are pending it blocks on the oldest (ordered) or next finished (unordered)
+// chunk before reading more, so memory stays bounded however large the input is.
+public class BatchEvaluator {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    // Records per worker task; one task per record spends more time handing off than evaluating
+    private static final int CHUNK_SIZE = 64;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    // Mapped files are read through windows of at most this many bytes, which also caps the length of one line
+    private static final int MAP_WINDOW_SIZE = 1 << 28;
+
+    private final ExpressionCache cache;
+    private final int threads;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final long timeoutMillis;
+    private final ResultRenderer renderer;
+
+    // Worker threads only live for one run, so neither do their caches
+    private final ThreadLocal<ParsedLineCache> lineCaches = ThreadLocal.withInitial(ParsedLineCache::new);
+
+    public BatchEvaluator(ExpressionCache cache) {
+        this(cache, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT, true);
+    }
+
+    // ordered writes results in input order; otherwise they are written as they finish
+    public BatchEvaluator(ExpressionCache cache, int threads, int maxInFlight, boolean ordered) {
+        this(cache, threads, maxInFlight, ordered, 0, MarkdownRenderer.FULL);
+    }
+
+    // A record still rolling after timeoutMillis fails with "Evaluation timed out."; 0 means no timeout.
+    // renderer writes each result's breakdown.
+    public BatchEvaluator(ExpressionCache cache, int threads, int maxInFlight, boolean ordered, long timeoutMillis,
+            ResultRenderer renderer) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive");
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+
+        this.cache = cache;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+        this.timeoutMillis = timeoutMillis;
+        this.renderer = renderer;
+    }
+
+    // Reads records until end of input; output is flushed but not closed
+    public BatchStats run(ReadableByteChannel input, BatchFormat format, Writer output)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            Batch batch = new Batch(executor, format, new BufferedWriter(output, OUTPUT_BUFFER_SIZE));
+            LineReader reader = new LineReader(input);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+
+                batch.add(reader.lineNumber(), line);
+            }
+
+            batch.finish();
+            return new BatchStats(batch.numRecords, batch.numErrors, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Memory-maps the file and hands workers slices of the mapping, cut on line boundaries. Plain lines
+    // are lexed straight from the mapped bytes without becoming Strings, through a per-worker
+    // ParsedLineCache rather than the expression cache; JSONL lines are decoded since their fields
+    // are strings anyway.
+    public BatchStats run(Path file, BatchFormat format, Writer output) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            Batch batch = new Batch(executor, format, new BufferedWriter(output, OUTPUT_BUFFER_SIZE));
+            long size = channel.size();
+            long windowStart = 0;
+            long lineNumber = 1;
+
+            while (windowStart < size) {
+                int windowSize = (int) Math.min(MAP_WINDOW_SIZE, size - windowStart);
+                boolean lastWindow = windowStart + windowSize == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+
+                int chunkStart = 0;
+                int chunkLines = 0;
+                for (int i = 0; i < windowSize; i++) {
+                    if (window.get(i) != '\n')
+                        continue;
+
+                    if (++chunkLines == batch.chunkSize) {
+                        batch.submit(window.slice(chunkStart, i + 1 - chunkStart), lineNumber);
+                        lineNumber += chunkLines;
+                        chunkStart = i + 1;
+                        chunkLines = 0;
+                    }
+                }
+
+                // A trailing line without a newline is only complete in the last window
+                int chunkEnd = lastWindow ? windowSize : lastLineEnd(window, chunkStart, windowSize);
+                if (chunkEnd > chunkStart) {
+                    batch.submit(window.slice(chunkStart, chunkEnd - chunkStart), lineNumber);
+                    lineNumber += chunkLines;
+                } else if (chunkStart == 0 && !lastWindow) {
+                    throw new IOException("Line " + lineNumber + " is longer than " + MAP_WINDOW_SIZE + " bytes");
+                }
+
+                windowStart += chunkEnd;
+            }
+
+            batch.finish();
+            return new BatchStats(batch.numRecords, batch.numErrors, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int lastLineEnd(ByteBuffer window, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (window.get(i) == '\n')
+                return i + 1;
+        }
+        return start;
+    }
+
+    private RenderedChunk evaluate(long[] lineNumbers, String[] records, int count, BatchFormat format) {
+        RenderedChunk rendered = new RenderedChunk();
+        for (int i = 0; i < count; i++)
+            rendered.add(evaluate(lineNumbers[i], records[i], format), format);
+        return rendered;
+    }
+
+    private RenderedChunk evaluate(ByteBuffer chunk, long firstLineNumber, BatchFormat format) {
+        RenderedChunk rendered = new RenderedChunk();
+        ParsedLineCache lineCache = lineCaches.get();
+
+        long lineNumber = firstLineNumber;
+        int lineStart = 0;
+        int limit = chunk.limit();
+
+        while (lineStart < limit) {
+            int next = lineStart;
+            while (next < limit && chunk.get(next) != '\n')
+                next++;
+
+            int lineEnd = next;
+            if (lineEnd > lineStart && chunk.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            if (!isBlank(chunk, lineStart, lineEnd))
+                rendered.add(evaluate(lineNumber, chunk.slice(lineStart, lineEnd - lineStart), lineCache, format), format);
+
+            lineNumber++;
+            lineStart = next + 1;
+        }
+
+        return rendered;
+    }
+
+    private BatchResult evaluate(long lineNumber, ByteBuffer line, ParsedLineCache lineCache, BatchFormat format) {
+        if (format == BatchFormat.JSONL)
+            return evaluate(lineNumber, StandardCharsets.UTF_8.decode(line).toString(), format);
+
+        try {
+            EvaluationResult result = evaluator(lineCache.get(line)).evaluate();
+            return BatchResult.success(lineNumber, null, null, result);
+        } catch (Exception e) {
+            return BatchResult.failure(lineNumber, null, null, e.getMessage());
+        } catch (StackOverflowError e) {
+            return BatchResult.failure(lineNumber, null, null, "Expression is nested too deeply.");
+        }
+    }
+
+    private Evaluator evaluator(ASTNode root) {
+        if (timeoutMillis == 0)
+            return new Evaluator(root);
+        return new Evaluator(root, new CancellationToken(timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private static boolean isBlank(ByteBuffer chunk, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = chunk.get(i);
+            if (b != ' ' && b != '\t' && b != '\r')
+                return false;
+        }
+        return true;
+    }
+
+    private BatchResult evaluate(long lineNumber, String record, BatchFormat format) {
+        Object id = null;
+        String expression = format == BatchFormat.LINES ? record : null;
+
+        try {
+            if (format == BatchFormat.JSONL) {
+                Map<String, Object> fields = Json.parseObject(record);
+                id = fields.get("id");
+                if (!(fields.get("expression") instanceof String))
+                    throw new Exception("Missing \"expression\" string");
+                expression = (String) fields.get("expression");
+            }
+
+            EvaluationResult result = evaluator(cache.get(expression)).evaluate();
+            return BatchResult.success(lineNumber, id, expression, result);
+        } catch (Exception e) {
+            return BatchResult.failure(lineNumber, id, expression, e.getMessage());
+        } catch (StackOverflowError e) {
+            return BatchResult.failure(lineNumber, id, expression, "Expression is nested too deeply.");
+        }
+    }
+
+    // Results of one chunk, written out by the worker that evaluated them so displays are rendered in
+    // parallel and straight into the chunk's text rather than into a String per record
+    private class RenderedChunk {
+        final StringBuilder text = new StringBuilder();
+        int numRecords = 0;
+        int numErrors = 0;
+
+        void add(BatchResult result, BatchFormat format) {
+            int start = text.length();
+            try {
+                result.write(format, renderer, text);
+            } catch (IOException e) {
+                // StringBuilder never throws
+                throw new IllegalStateException(e);
+            } catch (StackOverflowError e) {
+                // Rendering recurses as deep as evaluation did
+                text.setLength(start);
+                result = BatchResult.failure(result.lineNumber, result.id, result.expression,
+                        "Expression is nested too deeply.");
+                add(result, format);
+                return;
+            }
+
+            numRecords++;
+            if (result.isError())
+                numErrors++;
+        }
+    }
+
+    // Pending results of one run. Only the calling thread touches this.
+    private class Batch {
+        private final ExecutorService executor;
+        private final BatchFormat format;
+        private final Writer writer;
+        final int chunkSize = Math.min(CHUNK_SIZE, maxInFlight);
+        private final int maxChunks = Math.max(1, maxInFlight / chunkSize);
+
+        // Records read but not yet submitted
+        private long[] lineNumbers = new long[chunkSize];
+        private String[] records = new String[chunkSize];
+        private int count = 0;
+
+        // Ordered runs wait on the oldest pending chunk; unordered runs take whichever finishes first
+        private final ArrayDeque<Future<RenderedChunk>> pending = new ArrayDeque<>();
+        private final ExecutorCompletionService<RenderedChunk> completion;
+        private int inFlight = 0;
+
+        private char[] charBuffer = new char[OUTPUT_BUFFER_SIZE];
+
+        long numRecords = 0;
+        long numErrors = 0;
+
+        Batch(ExecutorService executor, BatchFormat format, Writer writer) {
+            this.executor = executor;
+            this.format = format;
+            this.writer = writer;
+            this.completion = new ExecutorCompletionService<>(executor);
+        }
+
+        void add(long lineNumber, String record) throws IOException, InterruptedException {
+            lineNumbers[count] = lineNumber;
+            records[count] = record;
+            count++;
+
+            if (count == chunkSize)
+                submitRecords();
+        }
+
+        // Submits a mapped chunk of whole lines, the first of which is line firstLineNumber
+        void submit(ByteBuffer chunk, long firstLineNumber) throws IOException, InterruptedException {
+            submit(() -> evaluate(chunk, firstLineNumber, format));
+        }
+
+        void finish() throws IOException, InterruptedException {
+            if (count > 0)
+                submitRecords();
+            while (inFlight > 0)
+                write(ordered ? pending.removeFirst() : completion.take());
+            writer.flush();
+        }
+
+        private void submitRecords() throws IOException, InterruptedException {
+            long[] chunkLineNumbers = lineNumbers;
+            String[] chunkRecords = records;
+            int chunkCount = count;
+
+            lineNumbers = new long[chunkSize];
+            records = new String[chunkSize];
+            count = 0;
+
+            submit(() -> evaluate(chunkLineNumbers, chunkRecords, chunkCount, format));
+        }
+
+        private void submit(Callable<RenderedChunk> task) throws IOException, InterruptedException {
+            if (inFlight == maxChunks)
+                write(ordered ? pending.removeFirst() : completion.take());
+
+            if (ordered)
+                pending.addLast(executor.submit(task));
+            else
+                completion.submit(task);
+            inFlight++;
+
+            // Write whatever is already done without waiting
+            if (ordered) {
+                while (!pending.isEmpty() && pending.peekFirst().isDone())
+                    write(pending.removeFirst());
+            } else {
+                Future<RenderedChunk> done;
+                while ((done = completion.poll()) != null)
+                    write(done);
+            }
+        }
+
+        private void write(Future<RenderedChunk> future) throws IOException, InterruptedException {
+            RenderedChunk rendered;
+            try {
+                rendered = future.get();
+            } catch (ExecutionException e) {
+                // evaluate() catches evaluation errors, so this is a bug rather than bad input
+                throw new IllegalStateException(e.getCause());
+            }
+
+            inFlight--;
+            numRecords += rendered.numRecords;
+            numErrors += rendered.numErrors;
+
+            // Writer.append(CharSequence) would copy the text into a String first
+            int length = rendered.text.length();
+            if (charBuffer.length < length)
+                charBuffer = new char[Math.max(length, charBuffer.length * 2)];
+            rendered.text.getChars(0, length, charBuffer, 0);
+            writer.write(charBuffer, 0, length);
+        }
+    }
+}
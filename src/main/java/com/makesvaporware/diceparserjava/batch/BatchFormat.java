@@ -0,0 +1,10 @@
+package com.makesvaporware.diceparserjava.batch;
+
+// Record format for batch input and output
+public enum BatchFormat {
+    // One expression per line in; "<line>\t<total>\t<breakdown>" or "<line>\tError: <message>" out
+    LINES,
+
+    // One {"expression": "...", "id": ...} object per line in; one JSON result object per line out
+    JSONL
+}
@@ -0,0 +1,89 @@
+package com.makesvaporware.diceparserjava.batch;
+
+import java.io.IOException;
+
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+import com.makesvaporware.diceparserjava.json.Json;
+import com.makesvaporware.diceparserjava.render.JsonRenderer;
+import com.makesvaporware.diceparserjava.render.ResultRenderer;
+
+// Outcome of one batch record; exactly one of result and error is set
+class BatchResult {
+    final long lineNumber;
+    final Object id;
+    final String expression;
+    final EvaluationResult result;
+    final String error;
+
+    private BatchResult(long lineNumber, Object id, String expression, EvaluationResult result, String error) {
+        this.lineNumber = lineNumber;
+        this.id = id;
+        this.expression = expression;
+        this.result = result;
+        this.error = error;
+    }
+
+    static BatchResult success(long lineNumber, Object id, String expression, EvaluationResult result) {
+        return new BatchResult(lineNumber, id, expression, result, null);
+    }
+
+    static BatchResult failure(long lineNumber, Object id, String expression, String error) {
+        return new BatchResult(lineNumber, id, expression, null, error);
+    }
+
+    boolean isError() {
+        return error != null;
+    }
+
+    void write(BatchFormat format, ResultRenderer renderer, Appendable out) throws IOException {
+        if (format == BatchFormat.JSONL)
+            writeJson(renderer, out);
+        else
+            writeLine(renderer, out);
+        out.append('\n');
+    }
+
+    private void writeLine(ResultRenderer renderer, Appendable out) throws IOException {
+        out.append(String.valueOf(lineNumber)).append('\t');
+
+        if (isError()) {
+            out.append("Error: ").append(error);
+            return;
+        }
+
+        out.append(result.getTotalString()).append('\t');
+        renderer.render(result, out);
+    }
+
+    private void writeJson(ResultRenderer renderer, Appendable out) throws IOException {
+        out.append("{\"line\":").append(String.valueOf(lineNumber));
+
+        if (id != null) {
+            out.append(",\"id\":");
+            Json.write(id, out);
+        }
+
+        if (expression != null) {
+            out.append(",\"expression\":");
+            Json.writeString(expression, out);
+        }
+
+        if (isError()) {
+            out.append(",\"error\":");
+            Json.writeString(error, out);
+        } else {
+            out.append(",\"total\":");
+            JsonRenderer.writeTotal(result, out);
+            out.append(",\"display\":");
+            if (renderer instanceof JsonRenderer) {
+                renderer.render(result, out);
+            } else {
+                out.append('"');
+                renderer.render(result, Json.escaping(out));
+                out.append('"');
+            }
+        }
+
+        out.append('}');
+    }
+}
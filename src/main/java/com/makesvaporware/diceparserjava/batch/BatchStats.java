@@ -0,0 +1,36 @@
+package com.makesvaporware.diceparserjava.batch;
+
+public class BatchStats {
+    private final long records;
+    private final long errors;
+    private final long elapsedNanos;
+
+    BatchStats(long records, long errors, long elapsedNanos) {
+        this.records = records;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Non-blank input lines, including ones that failed
+    public long getRecords() {
+        return records;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("records=%d, errors=%d, %.0f records/s (%.1f ms)", records, errors,
+                getRecordsPerSecond(), elapsedNanos / 1e6);
+    }
+}
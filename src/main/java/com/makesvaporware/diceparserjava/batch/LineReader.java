@@ -0,0 +1,78 @@
+package com.makesvaporware.diceparserjava.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Splits a channel into UTF-8 lines through one reusable buffer. "\n" and "\r\n" both end a line,
+// and the buffer only grows when a single line does not fit in it.
+class LineReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+    // Bytes before this index are known not to contain a newline
+    private int scanned = 0;
+    private boolean eof = false;
+    private long lineNumber = 0;
+
+    LineReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    // Returns the next line without its terminator, or null at end of input
+    String readLine() throws IOException {
+        while (true) {
+            int limit = buffer.limit();
+            for (int i = Math.max(scanned, buffer.position()); i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    String line = decode(buffer.position(), i);
+                    buffer.position(i + 1);
+                    return line;
+                }
+            }
+            scanned = limit;
+
+            if (eof) {
+                if (!buffer.hasRemaining())
+                    return null;
+                String line = decode(buffer.position(), limit);
+                buffer.position(limit);
+                return line;
+            }
+
+            fill();
+        }
+    }
+
+    // 1-based number of the line last returned by readLine()
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    private void fill() throws IOException {
+        int consumed = buffer.position();
+
+        if (consumed == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        scanned -= consumed;
+
+        if (channel.read(buffer) < 0)
+            eof = true;
+        buffer.flip();
+    }
+
+    private String decode(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r')
+            end--;
+        lineNumber++;
+        return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package com.makesvaporware.diceparserjava.batch;
+
+import java.nio.ByteBuffer;
+
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.lexer.TokenBuffer;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.Parser;
+
+// Direct-mapped cache of parsed trees keyed by a line's raw bytes, so a worker parses each distinct
+// line of a mapped file roughly once without decoding it to a String. Not thread-safe; each worker
+// owns one. A line that lands on an occupied slot replaces it.
+class ParsedLineCache {
+    private static final int SLOTS = 4096;
+    private static final int MAX_KEY_LENGTH = 256;
+
+    private final byte[][] keys = new byte[SLOTS][];
+    private final ASTNode[] roots = new ASTNode[SLOTS];
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    // Parses the bytes between the line's position and limit
+    ASTNode get(ByteBuffer line) throws Exception {
+        int start = line.position();
+        int length = line.remaining();
+
+        int hash = 1;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + line.get(start + i);
+        int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+
+        byte[] key = keys[slot];
+        if (key != null && matches(key, line, start, length))
+            return roots[slot];
+
+        new Lexer(line).lex(tokens);
+        ASTNode root = new Parser(tokens).parse();
+
+        if (length <= MAX_KEY_LENGTH) {
+            key = new byte[length];
+            line.get(start, key);
+            keys[slot] = key;
+            roots[slot] = root;
+        }
+
+        return root;
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer line, int start, int length) {
+        if (key.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != line.get(start + i))
+                return false;
+        }
+        return true;
+    }
+}
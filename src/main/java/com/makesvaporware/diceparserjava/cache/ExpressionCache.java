@@ -0,0 +1,253 @@
+package com.makesvaporware.diceparserjava.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.makesvaporware.diceparserjava.compiler.CompiledRoll;
+import com.makesvaporware.diceparserjava.compiler.ExpressionCompiler;
+import com.makesvaporware.diceparserjava.lexer.Lexer;
+import com.makesvaporware.diceparserjava.lexer.TokenBuffer;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.Optimizer;
+import com.makesvaporware.diceparserjava.parser.Parser;
+
+public class ExpressionCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024;
+    public static final int DEFAULT_COMPILE_THRESHOLD = 16;
+
+    // Rough per-object costs used to estimate the retained size of a parsed tree
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int BYTES_PER_TOKEN = 48;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final int compileThreshold;
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compilations = new LongAdder();
+
+    private static class Entry {
+        final ASTNode root;
+        final long weight;
+
+        // Simplified tree behind getCompiled(), which never needs the original notation
+        final ASTNode optimizedRoot;
+
+        // Guarded by the cache lock
+        int uses;
+        boolean compileAttempted;
+
+        // Interpreted until the entry has been used compileThreshold times
+        volatile CompiledRoll roll;
+
+        Entry(ASTNode root, long weight) {
+            this.root = root;
+            this.weight = weight;
+            this.optimizedRoot = Optimizer.optimize(root);
+            this.roll = CompiledRoll.interpreted(optimizedRoot);
+        }
+    }
+
+    public ExpressionCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, DEFAULT_COMPILE_THRESHOLD);
+    }
+
+    public ExpressionCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, DEFAULT_COMPILE_THRESHOLD);
+    }
+
+    // compileThreshold is how many times getCompiled() must see an expression before it is
+    // compiled to bytecode; Integer.MAX_VALUE never compiles
+    public ExpressionCache(int maxEntries, long maxWeight, int compileThreshold) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("maxWeight must be positive");
+        if (compileThreshold < 0)
+            throw new IllegalArgumentException("compileThreshold must not be negative");
+
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.compileThreshold = compileThreshold;
+    }
+
+    // Returns the parsed tree for an expression, lexing and parsing it only on a miss.
+    // Returned trees are shared between callers and must not be modified.
+    public ASTNode get(String input) throws Exception {
+        return getEntry(input).root;
+    }
+
+    // Returns a total-only roll for an expression, built from the optimized tree. Hot expressions are
+    // compiled to bytecode once they reach the compile threshold; until then, or if compiling
+    // fails, the tree is interpreted.
+    public CompiledRoll getCompiled(String input) throws Exception {
+        Entry entry = getEntry(input);
+
+        boolean compile;
+        synchronized (this) {
+            compile = !entry.compileAttempted && ++entry.uses >= compileThreshold
+                    && compileThreshold != Integer.MAX_VALUE;
+            if (compile)
+                entry.compileAttempted = true;
+        }
+
+        if (compile) {
+            try {
+                entry.roll = compiler.compile(entry.optimizedRoot);
+                compilations.increment();
+            } catch (Exception e) {
+                // Keep interpreting, e.g. when the expression is too large for one method
+            }
+        }
+
+        return entry.roll;
+    }
+
+    private Entry getEntry(String input) throws Exception {
+        String key = normalize(input);
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+
+        // Lex the original input so error positions match what the caller typed
+        TokenBuffer tokens = new Lexer(input).lex(new TokenBuffer());
+        ASTNode root = new Parser(tokens).parse();
+
+        return put(key, new Entry(root, estimateWeight(key, tokens.size())));
+    }
+
+    // Returns the entry now cached under key, which may be one another thread added first
+    private synchronized Entry put(String key, Entry entry) {
+        if (entry.weight > maxWeight)
+            return entry;
+
+        Entry previous = entries.putIfAbsent(key, entry);
+        if (previous != null)
+            return previous;
+
+        weight += entry.weight;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            weight -= eldest.weight;
+            evictions.increment();
+        }
+
+        return entry;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    // === STATS ===
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    // === HELPERS ===
+
+    private static long estimateWeight(String key, int numTokens) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + (long) BYTES_PER_TOKEN * numTokens;
+    }
+
+    // Strips whitespace that the lexer would skip anyway, so "1d20 + 5" and "1d20+5" share an entry.
+    // Whitespace between two word characters (e.g. "1 2", "2 d6", "k >3") changes how the input
+    // lexes, so it is collapsed to a single space instead of being removed.
+    static String normalize(String input) {
+        int len = input.length();
+        StringBuilder sb = null;
+        char prev = '\0';
+        int i = 0;
+
+        while (i < len) {
+            char ch = input.charAt(i);
+
+            if (!Character.isWhitespace(ch)) {
+                if (sb != null)
+                    sb.append(ch);
+                prev = ch;
+                i++;
+                continue;
+            }
+
+            int start = i;
+            while (i < len && Character.isWhitespace(input.charAt(i)))
+                i++;
+
+            char next = i < len ? input.charAt(i) : '\0';
+            boolean keepSeparator = isWordChar(prev) && (isWordChar(next) || next == '<' || next == '>');
+
+            // Leave the input untouched until the first whitespace that actually needs rewriting
+            if (sb == null) {
+                if (keepSeparator && i - start == 1 && input.charAt(start) == ' ')
+                    continue;
+                sb = new StringBuilder(len).append(input, 0, start);
+            }
+
+            if (keepSeparator)
+                sb.append(' ');
+        }
+
+        return sb == null ? input : sb.toString();
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '.';
+    }
+}
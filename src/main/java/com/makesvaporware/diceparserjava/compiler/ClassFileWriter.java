@@ -0,0 +1,325 @@
+package com.makesvaporware.diceparserjava.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format (JVMS chapter 4) to emit one class with straight-line
+// methods. Code without branches needs no StackMapTable, so there are no frames to compute.
+class ClassFileWriter {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_17_VERSION = 61;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final byte CONSTANT_UTF8 = 1;
+    private static final byte CONSTANT_INTEGER = 3;
+    private static final byte CONSTANT_FLOAT = 4;
+    private static final byte CONSTANT_LONG = 5;
+    private static final byte CONSTANT_CLASS = 7;
+    private static final byte CONSTANT_FIELDREF = 9;
+    private static final byte CONSTANT_METHODREF = 10;
+    private static final byte CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    // Class names use the internal form, e.g. "java/lang/Object"
+    ClassFileWriter(String className, String superName) {
+        this.thisClass = classConstant(className);
+        this.superClass = classConstant(superName);
+    }
+
+    void addInterface(String interfaceName) {
+        interfaces.add(classConstant(interfaceName));
+    }
+
+    void addField(int access, String name, String descriptor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(access);
+        out.writeShort(utf8Constant(name));
+        out.writeShort(utf8Constant(descriptor));
+        out.writeShort(0);
+        fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) throws IOException {
+        byte[] bytecode = code.toByteArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(access);
+        out.writeShort(utf8Constant(name));
+        out.writeShort(utf8Constant(descriptor));
+        out.writeShort(1);
+
+        // Code attribute without exception table or nested attributes
+        out.writeShort(utf8Constant("Code"));
+        out.writeInt(12 + bytecode.length);
+        out.writeShort(code.maxStack);
+        out.writeShort(code.maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(JAVA_17_VERSION);
+
+        out.writeShort(constantCount);
+        constantBytes.writeTo(out);
+
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+
+        out.writeShort(interfaces.size());
+        for (int index : interfaces)
+            out.writeShort(index);
+
+        out.writeShort(fields.size());
+        for (byte[] field : fields)
+            out.write(field);
+
+        out.writeShort(methods.size());
+        for (byte[] method : methods)
+            out.write(method);
+
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    // === CONSTANT POOL ===
+
+    int utf8Constant(String value) {
+        return constant("U" + value, () -> {
+            constants.writeByte(CONSTANT_UTF8);
+            constants.writeUTF(value);
+        });
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, () -> {
+            constants.writeByte(CONSTANT_INTEGER);
+            constants.writeInt(value);
+        });
+    }
+
+    int floatConstant(float value) {
+        // Keyed by bit pattern so 0.0f and -0.0f stay distinct
+        return constant("F" + Float.floatToRawIntBits(value), () -> {
+            constants.writeByte(CONSTANT_FLOAT);
+            constants.writeFloat(value);
+        });
+    }
+
+    int longConstant(long value) {
+        // Long constants take up two pool entries
+        return constant("J" + value, 2, () -> {
+            constants.writeByte(CONSTANT_LONG);
+            constants.writeLong(value);
+        });
+    }
+
+    int classConstant(String name) {
+        int nameIndex = utf8Constant(name);
+        return constant("C" + name, () -> {
+            constants.writeByte(CONSTANT_CLASS);
+            constants.writeShort(nameIndex);
+        });
+    }
+
+    int fieldConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberConstant(byte tag, String owner, String name, String descriptor) {
+        int classIndex = classConstant(owner);
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        int nameAndTypeIndex = constant("N" + name + ":" + descriptor, () -> {
+            constants.writeByte(CONSTANT_NAME_AND_TYPE);
+            constants.writeShort(nameIndex);
+            constants.writeShort(descriptorIndex);
+        });
+
+        return constant(tag + owner + "." + name + ":" + descriptor, () -> {
+            constants.writeByte(tag);
+            constants.writeShort(classIndex);
+            constants.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    private interface ConstantWriter {
+        void write() throws IOException;
+    }
+
+    private int constant(String key, ConstantWriter writer) {
+        return constant(key, 1, writer);
+    }
+
+    private int constant(String key, int entries, ConstantWriter writer) {
+        Integer existing = constantIndexes.get(key);
+        if (existing != null)
+            return existing;
+
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int index = constantCount;
+        constantCount += entries;
+        if (constantCount - 1 > 0xFFFF)
+            throw new IllegalStateException("Constant pool overflow");
+
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    // === CODE ===
+
+    // Bytecode for one method body, tracking the operand stack depth as instructions are added
+    static class Code {
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int ALOAD_2 = 0x2c;
+        static final int ASTORE_2 = 0x4d;
+        static final int AALOAD = 0x32;
+        static final int FADD = 0x62;
+        static final int FSUB = 0x66;
+        static final int FMUL = 0x6a;
+        static final int L2F = 0x89;
+        static final int FRETURN = 0xae;
+        static final int RETURN = 0xb1;
+
+        private static final int ICONST_0 = 0x03;
+        private static final int BIPUSH = 0x10;
+        private static final int SIPUSH = 0x11;
+        private static final int LDC_W = 0x13;
+        private static final int LDC2_W = 0x14;
+        private static final int GETFIELD = 0xb4;
+        private static final int PUTFIELD = 0xb5;
+        private static final int INVOKEVIRTUAL = 0xb6;
+        private static final int INVOKESPECIAL = 0xb7;
+        private static final int INVOKESTATIC = 0xb8;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack;
+        int maxStack;
+        int maxLocals;
+
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        // Emits a single-byte instruction that changes the stack depth by stackDelta
+        Code op(int opcode, int stackDelta) {
+            bytes.write(opcode);
+            return adjustStack(stackDelta);
+        }
+
+        Code pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                bytes.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                writeShort(value);
+            } else {
+                throw new IllegalArgumentException("Use ldc for large int constants");
+            }
+            return adjustStack(1);
+        }
+
+        Code ldc(int constantIndex) {
+            bytes.write(LDC_W);
+            writeShort(constantIndex);
+            return adjustStack(1);
+        }
+
+        // Stack depths count longs as two slots, as the verifier does
+        Code ldc2(int constantIndex) {
+            bytes.write(LDC2_W);
+            writeShort(constantIndex);
+            return adjustStack(2);
+        }
+
+        Code getField(int fieldIndex) {
+            return memberOp(GETFIELD, fieldIndex, 0);
+        }
+
+        Code putField(int fieldIndex) {
+            return memberOp(PUTFIELD, fieldIndex, -2);
+        }
+
+        // stackDelta is the net effect of the call: results pushed minus receiver and arguments popped
+        Code invokeVirtual(int methodIndex, int stackDelta) {
+            return memberOp(INVOKEVIRTUAL, methodIndex, stackDelta);
+        }
+
+        Code invokeSpecial(int methodIndex, int stackDelta) {
+            return memberOp(INVOKESPECIAL, methodIndex, stackDelta);
+        }
+
+        Code invokeStatic(int methodIndex, int stackDelta) {
+            return memberOp(INVOKESTATIC, methodIndex, stackDelta);
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        private Code memberOp(int opcode, int index, int stackDelta) {
+            bytes.write(opcode);
+            writeShort(index);
+            return adjustStack(stackDelta);
+        }
+
+        private void writeShort(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        private Code adjustStack(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+            return this;
+        }
+    }
+}
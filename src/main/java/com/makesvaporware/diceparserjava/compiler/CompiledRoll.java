@@ -0,0 +1,20 @@
+package com.makesvaporware.diceparserjava.compiler;
+
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+
+// An expression reduced to code that only computes its total, like ASTNode.evaluateValue().
+// Implementations are stateless and may be shared between threads.
+@FunctionalInterface
+public interface CompiledRoll {
+    float roll(EvaluationContext context) throws Exception;
+
+    default float roll() throws Exception {
+        return roll(EvaluationContext.defaultContext());
+    }
+
+    // Walks the tree on every roll; used until (or instead of) a compiled version
+    static CompiledRoll interpreted(ASTNode root) {
+        return root::evaluateValue;
+    }
+}
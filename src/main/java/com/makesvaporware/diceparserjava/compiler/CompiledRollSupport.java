@@ -0,0 +1,13 @@
+package com.makesvaporware.diceparserjava.compiler;
+
+// Static helpers called from generated code for operations that need a branch
+final class CompiledRollSupport {
+    private CompiledRollSupport() {
+    }
+
+    static float divide(float left, float right) throws Exception {
+        if (right == 0)
+            throw new Exception("Division by zero");
+        return left / right;
+    }
+}
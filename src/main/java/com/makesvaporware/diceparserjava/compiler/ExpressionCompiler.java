@@ -0,0 +1,225 @@
+package com.makesvaporware.diceparserjava.compiler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.makesvaporware.diceparserjava.compiler.ClassFileWriter.Code;
+import com.makesvaporware.diceparserjava.lexer.Token;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.BinaryExprNode;
+import com.makesvaporware.diceparserjava.parser.FloatLiteralNode;
+import com.makesvaporware.diceparserjava.parser.IntegerLiteralNode;
+import com.makesvaporware.diceparserjava.parser.ParenthesizedExprNode;
+import com.makesvaporware.diceparserjava.parser.UnaryExprNode;
+
+// Turns an expression tree into a hidden class implementing CompiledRoll. The arithmetic is
+// emitted as straight-line bytecode, so the JIT sees one flat method instead of a chain of
+// virtual evaluateValue() calls. Whole-number subtrees are computed in longs and converted to
+// float once, exactly as ASTNode.evaluateLong() does; the rest is float arithmetic. Dice terms
+// (and any node type the compiler does not know) are kept in an array field and called
+// directly, so they roll exactly as the tree would.
+//
+// The generated class looks like:
+//
+//     final class CompiledExpression implements CompiledRoll {
+//         private final ASTNode[] nodes;
+//
+//         public float roll(EvaluationContext context) {
+//             ASTNode[] nodes = this.nodes;
+//             return (float) ((nodes[0].evaluateLong(context) + 5L) * 2L);
+//         }
+//     }
+public class ExpressionCompiler {
+    private static final String PACKAGE = "com/makesvaporware/diceparserjava/";
+    private static final String CLASS_NAME = PACKAGE + "compiler/CompiledExpression";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String COMPILED_ROLL = PACKAGE + "compiler/CompiledRoll";
+    private static final String SUPPORT = PACKAGE + "compiler/CompiledRollSupport";
+    private static final String AST_NODE = PACKAGE + "parser/ASTNode";
+    private static final String CONTEXT = PACKAGE + "evaluator/EvaluationContext";
+    private static final String MATH = "java/lang/Math";
+
+    private static final String NODES_FIELD = "nodes";
+    private static final String NODES_DESCRIPTOR = "[L" + AST_NODE + ";";
+
+    // Methods larger than this are never JIT-compiled by HotSpot, which defeats the purpose
+    private static final int MAX_METHOD_SIZE = 8000;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    public CompiledRoll compile(ASTNode root) throws Exception {
+        ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, OBJECT);
+        writer.addInterface(COMPILED_ROLL);
+        writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, NODES_FIELD, NODES_DESCRIPTOR);
+
+        int nodesField = writer.fieldConstant(CLASS_NAME, NODES_FIELD, NODES_DESCRIPTOR);
+
+        // Constructor: super(); this.nodes = nodes;
+        Code init = new Code(2)
+                .op(Code.ALOAD_0, 1)
+                .invokeSpecial(writer.methodConstant(OBJECT, "<init>", "()V"), -1)
+                .op(Code.ALOAD_0, 1)
+                .op(Code.ALOAD_1, 1)
+                .putField(nodesField)
+                .op(Code.RETURN, 0);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + NODES_DESCRIPTOR + ")V", init);
+
+        // roll(context): local 0 is this, 1 is the context, 2 caches the nodes array
+        List<ASTNode> nodes = new ArrayList<>();
+        Code roll = new Code(3)
+                .op(Code.ALOAD_0, 1)
+                .getField(nodesField)
+                .op(Code.ASTORE_2, -1);
+        emit(writer, roll, root, nodes);
+        roll.op(Code.FRETURN, -1);
+
+        if (roll.size() > MAX_METHOD_SIZE)
+            throw new Exception("Expression is too large to compile.");
+
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "roll", "(L" + CONTEXT + ";)F", roll);
+
+        return instantiate(writer.toByteArray(), nodes.toArray(new ASTNode[0]));
+    }
+
+    // Appends code that leaves the node's value on the stack
+    private void emit(ClassFileWriter writer, Code code, ASTNode node, List<ASTNode> nodes) throws Exception {
+        if (node.isIntegral() && (node instanceof BinaryExprNode || node instanceof UnaryExprNode)) {
+            emitLong(writer, code, node, nodes);
+            code.op(Code.L2F, -1);
+        } else if (node instanceof IntegerLiteralNode) {
+            code.ldc(writer.floatConstant(((IntegerLiteralNode) node).getValue()));
+        } else if (node instanceof FloatLiteralNode) {
+            code.ldc(writer.floatConstant(((FloatLiteralNode) node).getValue()));
+        } else if (node instanceof ParenthesizedExprNode) {
+            emit(writer, code, ((ParenthesizedExprNode) node).getInner(), nodes);
+        } else if (node instanceof UnaryExprNode) {
+            emitUnary(writer, code, (UnaryExprNode) node, nodes);
+        } else if (node instanceof BinaryExprNode) {
+            emitBinary(writer, code, (BinaryExprNode) node, nodes);
+        } else {
+            emitNodeCall(writer, code, node, nodes);
+        }
+    }
+
+    private void emitUnary(ClassFileWriter writer, Code code, UnaryExprNode node, List<ASTNode> nodes)
+            throws Exception {
+        switch (node.getOperator()) {
+            case PLUS:
+                emit(writer, code, node.getChild(), nodes);
+                break;
+            case MINUS:
+                // Same as the tree walker's -1 * value, including the sign of zero
+                code.ldc(writer.floatConstant(-1f));
+                emit(writer, code, node.getChild(), nodes);
+                code.op(Code.FMUL, -1);
+                break;
+            default:
+                throw new Exception("Unknown unary operator: " + Token.typeToString(node.getOperator()));
+        }
+    }
+
+    private void emitBinary(ClassFileWriter writer, Code code, BinaryExprNode node, List<ASTNode> nodes)
+            throws Exception {
+        emit(writer, code, node.getLeft(), nodes);
+        emit(writer, code, node.getRight(), nodes);
+
+        switch (node.getOperator()) {
+            case PLUS:
+                code.op(Code.FADD, -1);
+                break;
+            case MINUS:
+                code.op(Code.FSUB, -1);
+                break;
+            case MULTIPLY:
+                code.op(Code.FMUL, -1);
+                break;
+            case DIVIDE:
+                code.invokeStatic(writer.methodConstant(SUPPORT, "divide", "(FF)F"), -1);
+                break;
+            default:
+                throw new Exception("Unknown binary operator: " + Token.typeToString(node.getOperator()));
+        }
+    }
+
+    // === WHOLE-NUMBER SUBTREES ===
+
+    // Appends code that leaves an integral node's exact total on the stack as a long
+    private void emitLong(ClassFileWriter writer, Code code, ASTNode node, List<ASTNode> nodes) throws Exception {
+        if (node instanceof IntegerLiteralNode) {
+            code.ldc2(writer.longConstant(((IntegerLiteralNode) node).getValue()));
+        } else if (node instanceof ParenthesizedExprNode) {
+            emitLong(writer, code, ((ParenthesizedExprNode) node).getInner(), nodes);
+        } else if (node instanceof UnaryExprNode) {
+            UnaryExprNode unary = (UnaryExprNode) node;
+            emitLong(writer, code, unary.getChild(), nodes);
+
+            switch (unary.getOperator()) {
+                case PLUS:
+                    break;
+                case MINUS:
+                    code.invokeStatic(writer.methodConstant(MATH, "negateExact", "(J)J"), 0);
+                    break;
+                default:
+                    throw new Exception("Unknown unary operator: " + Token.typeToString(unary.getOperator()));
+            }
+        } else if (node instanceof BinaryExprNode) {
+            BinaryExprNode binary = (BinaryExprNode) node;
+            emitLong(writer, code, binary.getLeft(), nodes);
+            emitLong(writer, code, binary.getRight(), nodes);
+
+            switch (binary.getOperator()) {
+                case PLUS:
+                    code.invokeStatic(writer.methodConstant(MATH, "addExact", "(JJ)J"), -2);
+                    break;
+                case MINUS:
+                    code.invokeStatic(writer.methodConstant(MATH, "subtractExact", "(JJ)J"), -2);
+                    break;
+                case MULTIPLY:
+                    code.invokeStatic(writer.methodConstant(MATH, "multiplyExact", "(JJ)J"), -2);
+                    break;
+                default:
+                    throw new Exception("Unknown binary operator: " + Token.typeToString(binary.getOperator()));
+            }
+        } else {
+            emitNodeCall(writer, code, node, nodes, "evaluateLong", "J", 0);
+        }
+    }
+
+    // === NODE CALLS ===
+
+    private void emitNodeCall(ClassFileWriter writer, Code code, ASTNode node, List<ASTNode> nodes) {
+        emitNodeCall(writer, code, node, nodes, "evaluateValue", "F", -1);
+    }
+
+    // nodes[index].<method>(context); stackDelta is -1 for a float result and 0 for a long
+    private void emitNodeCall(ClassFileWriter writer, Code code, ASTNode node, List<ASTNode> nodes, String method,
+            String returnDescriptor, int stackDelta) {
+        int index = nodes.size();
+        nodes.add(node);
+
+        code.op(Code.ALOAD_2, 1)
+                .pushInt(index)
+                .op(Code.AALOAD, -1)
+                .op(Code.ALOAD_1, 1)
+                .invokeVirtual(writer.methodConstant(AST_NODE, method, "(L" + CONTEXT + ";)" + returnDescriptor),
+                        stackDelta);
+    }
+
+    private CompiledRoll instantiate(byte[] classFile, ASTNode[] nodes) throws Exception {
+        // Not strongly linked to this class loader, so compiled classes are unloaded with their cache entry
+        MethodHandles.Lookup lookup = LOOKUP.defineHiddenClass(classFile, true);
+        MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class, ASTNode[].class));
+
+        try {
+            return (CompiledRoll) constructor.invoke(nodes);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new Exception("Failed to instantiate compiled expression.", e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.makesvaporware.diceparserjava.cost;
+
+import java.util.List;
+
+import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.BinaryExprNode;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode.ModifierGroup;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode.ValidatedModifier;
+import com.makesvaporware.diceparserjava.parser.ParenthesizedExprNode;
+import com.makesvaporware.diceparserjava.parser.UnaryExprNode;
+
+// Estimates the cost of evaluating a tree without rolling anything, so runaway expressions can be
+// turned away before they start. Dice terms are followed modifier by modifier, tracking the pool
+// size and the number of kept dice. Expected values assume fair dice: a die that explodes or rerolls
+// with probability p adds p / (1 - p) dice on average, which is unbounded once every face matches.
+//
+// Invalid dice terms throw the same exceptions evaluation would.
+public class CostAnalyzer {
+    private CostAnalyzer() {
+    }
+
+    public static CostEstimate analyze(ASTNode node) throws Exception {
+        if (node instanceof DiceExprNode)
+            return analyzeDice((DiceExprNode) node);
+        if (node instanceof BinaryExprNode)
+            return analyze(((BinaryExprNode) node).getLeft()).plus(analyze(((BinaryExprNode) node).getRight()));
+        if (node instanceof UnaryExprNode)
+            return analyze(((UnaryExprNode) node).getChild());
+        if (node instanceof ParenthesizedExprNode)
+            return analyze(((ParenthesizedExprNode) node).getInner());
+        return CostEstimate.ZERO;
+    }
+
+    private static CostEstimate analyzeDice(DiceExprNode node) throws Exception {
+        int numDice = node.getNumDice();
+        int numSides = Math.max(1, node.getNumSides());
+        List<ModifierGroup> modifierGroups = node.getModifierGroups();
+
+        // Evaluation gives up once explode/reroll dice take the pool past the limit
+        double cap = Math.max(numDice, DiceExprNode.MAX_DICE_ROLLS + 1);
+        boolean exceedsDiceLimit = false;
+
+        double expectedDice = numDice;
+        double expectedKept = numDice;
+        double worstDice = numDice;
+        double worstKept = numDice;
+        double expectedWork = 0;
+        double worstWork = 0;
+
+        // Dice already in the pool show a face clamped to [lo, hi] by earlier minimum/maximum modifiers
+        int lo = 1;
+        int hi = numSides;
+
+        for (ModifierGroup group : modifierGroups) {
+            // Every modifier pass walks the whole pool
+            expectedWork += expectedDice;
+            worstWork += worstDice;
+
+            ValidatedModifier modifier = group.modifiers.get(0);
+            boolean ranked = isRanked(modifier);
+            double pool = matchProbability(modifier, lo, hi, numSides);
+            double fresh = matchProbability(modifier, 1, numSides, numSides);
+
+            switch (group.type) {
+                case MODIFIER_MINIMUM:
+                    lo = Math.max(lo, modifier.value());
+                    hi = Math.max(hi, modifier.value());
+                    break;
+                case MODIFIER_MAXIMUM:
+                    lo = Math.min(lo, modifier.value());
+                    hi = Math.min(hi, modifier.value());
+                    break;
+                case MODIFIER_EXPLODE: {
+                    // Highest/lowest selectors explode each selected die once
+                    double expected = ranked ? rankedCount(modifier, expectedKept) : chain(expectedKept, pool, fresh);
+                    double worst = ranked ? rankedCount(modifier, worstKept) : pool > 0 ? Double.POSITIVE_INFINITY : 0;
+                    expectedDice += expected;
+                    expectedKept += expected;
+                    worstDice += worst;
+                    worstKept += worst;
+                }
+                    break;
+                case MODIFIER_REROLL: {
+                    // Each reroll discards the old die, so the kept count stays the same
+                    expectedDice += ranked ? 0 : chain(expectedKept, pool, fresh);
+                    worstDice += !ranked && pool > 0 ? Double.POSITIVE_INFINITY : 0;
+                }
+                    break;
+                case MODIFIER_REROLL_ONCE: {
+                    expectedDice += ranked ? rankedCount(modifier, expectedKept) : expectedKept * pool;
+                    worstDice += ranked ? rankedCount(modifier, worstKept) : pool > 0 ? worstKept : 0;
+                }
+                    break;
+                case MODIFIER_REROLL_ADD: {
+                    // Adds at most one die
+                    double expected;
+                    double worst;
+                    if (ranked) {
+                        expected = rankedCount(modifier, expectedKept) > 0 ? 1 : 0;
+                        worst = rankedCount(modifier, worstKept) > 0 ? 1 : 0;
+                    } else {
+                        expected = 1 - Math.pow(1 - pool, expectedKept);
+                        worst = pool > 0 && worstKept > 0 ? 1 : 0;
+                    }
+                    expectedDice += expected;
+                    expectedKept += expected;
+                    worstDice += worst;
+                    worstKept += worst;
+                }
+                    break;
+                case MODIFIER_KEEP: {
+                    double expectedSelected = 0;
+                    double worstSelected = 0;
+                    for (ValidatedModifier keep : group.modifiers) {
+                        double p = matchProbability(keep, lo, hi, numSides);
+                        expectedSelected += isRanked(keep) ? rankedCount(keep, expectedKept) : expectedKept * p;
+                        worstSelected += isRanked(keep) ? rankedCount(keep, worstKept) : p > 0 ? worstKept : 0;
+                    }
+                    expectedKept = Math.min(expectedKept, expectedSelected);
+                    worstKept = Math.min(worstKept, worstSelected);
+                }
+                    break;
+                case MODIFIER_DROP: {
+                    double expectedSelected = 0;
+                    double fewestSelected = 0;
+                    for (ValidatedModifier drop : group.modifiers) {
+                        double p = matchProbability(drop, lo, hi, numSides);
+                        expectedSelected += isRanked(drop) ? rankedCount(drop, expectedKept) : expectedKept * p;
+                        fewestSelected += isRanked(drop) ? rankedCount(drop, worstKept) : p >= 1 ? worstKept : 0;
+                    }
+                    expectedKept = Math.max(0, expectedKept - expectedSelected);
+                    worstKept = Math.max(0, worstKept - fewestSelected);
+                }
+                    break;
+                default:
+                    break;
+            }
+
+            if (expectedDice > cap) {
+                exceedsDiceLimit = true;
+                expectedDice = cap;
+            }
+            expectedKept = Math.min(expectedKept, cap);
+            worstDice = Math.min(worstDice, cap);
+            worstKept = Math.min(worstKept, cap);
+        }
+
+        expectedWork += expectedDice;
+        worstWork += worstDice;
+        return new CostEstimate(numDice, expectedDice, worstDice, expectedWork, worstWork, exceedsDiceLimit);
+    }
+
+    // Expected dice added when each of count dice matches with probability first, and every new
+    // die rolled for it matches again with probability fresh
+    private static double chain(double count, double first, double fresh) {
+        if (first == 0 || count == 0)
+            return 0;
+        if (fresh >= 1)
+            return Double.POSITIVE_INFINITY;
+        return count * first / (1 - fresh);
+    }
+
+    private static boolean isRanked(ValidatedModifier modifier) {
+        return modifier.selector() == TokenType.SELECTOR_HIGHEST || modifier.selector() == TokenType.SELECTOR_LOWEST;
+    }
+
+    private static double rankedCount(ValidatedModifier modifier, double kept) {
+        return Math.max(0, Math.min(modifier.value(), kept));
+    }
+
+    // Chance that a die showing a uniform face of 1..numSides, clamped to [lo, hi], matches a value selector
+    private static double matchProbability(ValidatedModifier modifier, int lo, int hi, int numSides) {
+        long min;
+        long max;
+        switch (modifier.selector()) {
+            case SELECTOR_LITERAL:
+                min = modifier.value();
+                max = modifier.value();
+                break;
+            case SELECTOR_GREATER_THAN:
+                min = (long) modifier.value() + 1;
+                max = Long.MAX_VALUE;
+                break;
+            case SELECTOR_LESS_THAN:
+                min = Long.MIN_VALUE;
+                max = (long) modifier.value() - 1;
+                break;
+            default:
+                return 0;
+        }
+
+        if (min > max || max < lo || min > hi)
+            return 0;
+
+        // Clamping is monotonic, so the matching faces form one run
+        long firstFace = min <= lo ? 1 : min;
+        long lastFace = max >= hi ? numSides : max;
+        long faces = Math.min(lastFace, numSides) - Math.max(firstFace, 1) + 1;
+        return Math.max(0, faces) / (double) numSides;
+    }
+}
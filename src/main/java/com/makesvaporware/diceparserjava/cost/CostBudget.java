@@ -0,0 +1,50 @@
+package com.makesvaporware.diceparserjava.cost;
+
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode;
+
+// Dice limits checked against a CostEstimate before anything is rolled. Check each expression on its
+// own, or sum the estimates of a whole request with CostEstimate.plus() and check the total.
+public class CostBudget {
+    private final double maxExpectedDice;
+    private final double maxWorstCaseDice;
+
+    public CostBudget(double maxExpectedDice) {
+        this(maxExpectedDice, Double.POSITIVE_INFINITY);
+    }
+
+    public CostBudget(double maxExpectedDice, double maxWorstCaseDice) {
+        if (!(maxExpectedDice > 0))
+            throw new IllegalArgumentException("maxExpectedDice must be positive");
+        if (!(maxWorstCaseDice > 0))
+            throw new IllegalArgumentException("maxWorstCaseDice must be positive");
+
+        this.maxExpectedDice = maxExpectedDice;
+        this.maxWorstCaseDice = maxWorstCaseDice;
+    }
+
+    public double getMaxExpectedDice() {
+        return maxExpectedDice;
+    }
+
+    public double getMaxWorstCaseDice() {
+        return maxWorstCaseDice;
+    }
+
+    public CostEstimate check(ASTNode root) throws Exception {
+        CostEstimate estimate = CostAnalyzer.analyze(root);
+        check(estimate);
+        return estimate;
+    }
+
+    public void check(CostEstimate estimate) throws Exception {
+        if (estimate.exceedsDiceLimit())
+            throw new Exception("Expected to roll more than " + DiceExprNode.MAX_DICE_ROLLS + " dice in one term");
+        if (estimate.getExpectedDice() > maxExpectedDice)
+            throw new Exception(String.format("Expected to roll %.0f dice, more than the budget of %.0f",
+                    Math.ceil(estimate.getExpectedDice()), maxExpectedDice));
+        if (estimate.getWorstCaseDice() > maxWorstCaseDice)
+            throw new Exception(String.format("Can roll up to %.0f dice, more than the budget of %.0f",
+                    estimate.getWorstCaseDice(), maxWorstCaseDice));
+    }
+}
@@ -0,0 +1,71 @@
+package com.makesvaporware.diceparserjava.cost;
+
+// How many dice an expression rolls and how much modifier work that takes, estimated without rolling.
+// Work counts dice rolled plus dice scanned by each modifier pass. Worst cases of explode and reroll
+// modifiers are unbounded in theory, so both expected and worst-case figures for a dice term are
+// capped where the evaluator itself gives up with "Too many dice rolled."
+public class CostEstimate {
+    public static final CostEstimate ZERO = new CostEstimate(0, 0, 0, 0, 0, false);
+
+    private final long baseDice;
+    private final double expectedDice;
+    private final double worstCaseDice;
+    private final double expectedWork;
+    private final double worstCaseWork;
+    private final boolean exceedsDiceLimit;
+
+    public CostEstimate(long baseDice, double expectedDice, double worstCaseDice, double expectedWork,
+            double worstCaseWork, boolean exceedsDiceLimit) {
+        this.baseDice = baseDice;
+        this.expectedDice = expectedDice;
+        this.worstCaseDice = worstCaseDice;
+        this.expectedWork = expectedWork;
+        this.worstCaseWork = worstCaseWork;
+        this.exceedsDiceLimit = exceedsDiceLimit;
+    }
+
+    // Dice named by the expression, before any explode or reroll
+    public long getBaseDice() {
+        return baseDice;
+    }
+
+    public double getExpectedDice() {
+        return expectedDice;
+    }
+
+    public double getWorstCaseDice() {
+        return worstCaseDice;
+    }
+
+    public double getExpectedWork() {
+        return expectedWork;
+    }
+
+    public double getWorstCaseWork() {
+        return worstCaseWork;
+    }
+
+    // True when some dice term is expected to hit the evaluator's dice limit, i.e. it will
+    // almost certainly fail with "Too many dice rolled."
+    public boolean exceedsDiceLimit() {
+        return exceedsDiceLimit;
+    }
+
+    // Cost of evaluating both, e.g. two sides of a binary operator or two expressions in one request
+    public CostEstimate plus(CostEstimate other) {
+        return new CostEstimate(
+                baseDice + other.baseDice,
+                expectedDice + other.expectedDice,
+                worstCaseDice + other.worstCaseDice,
+                expectedWork + other.expectedWork,
+                worstCaseWork + other.worstCaseWork,
+                exceedsDiceLimit || other.exceedsDiceLimit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dice=%d, expected dice=%.1f, worst-case dice=%.0f, expected work=%.1f, worst-case work=%.0f%s",
+                baseDice, expectedDice, worstCaseDice, expectedWork, worstCaseWork,
+                exceedsDiceLimit ? " (exceeds dice limit)" : "");
+    }
+}
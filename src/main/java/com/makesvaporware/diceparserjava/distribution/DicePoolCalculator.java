@@ -0,0 +1,551 @@
+package com.makesvaporware.diceparserjava.distribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode.ModifierGroup;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode.ValidatedModifier;
+
+// Exact distribution of a single XdY term and its modifiers.
+//
+// While every modifier acts on each die independently, the pool is treated as numDice independent
+// "units" (one base die plus anything it spawned), and unit totals are convolved at the end.
+// Keep/drop with h/l is handled with an order-statistics DP when it is the last modifier group.
+// Any other pool-wide modifier collapses the units into a distribution over whole pools.
+class DicePoolCalculator {
+    // Explode chains are followed until the probability of continuing drops below this
+    private static final double CHAIN_CUTOFF = 1e-12;
+    private static final double PRUNE_PROBABILITY = 1e-18;
+
+    private final int numDice;
+    private final int numSides;
+    private final List<ModifierGroup> groups;
+    private final int maxStates;
+    private final long maxWork;
+
+    private final Map<Multiset, Double> freshDie = new HashMap<>();
+    private final List<Map<Multiset, Double>> freshDiceByCount = new ArrayList<>();
+    private final Map<ValidatedModifier, Map<Multiset, Double>> explodeChains = new HashMap<>();
+    private double[] logFactorials;
+
+    DicePoolCalculator(DiceExprNode node, int maxStates, long maxWork) throws Exception {
+        this.numDice = node.getNumDice();
+        this.numSides = node.getNumSides();
+        this.groups = node.getModifierGroups();
+        this.maxStates = maxStates;
+        this.maxWork = maxWork;
+    }
+
+    Distribution calculate() throws Exception {
+        for (ModifierGroup group : groups)
+            validate(group);
+
+        if (groups.isEmpty())
+            return convolvePower(uniformPmf(), numDice);
+
+        if (numSides > maxStates)
+            throw new Exception("Too many faces for exact calculation with modifiers.");
+
+        for (int face = 1; face <= numSides; face++)
+            freshDie.put(Multiset.of(face), 1.0 / numSides);
+
+        Map<Multiset, Double> unit = freshDie;
+        Map<Multiset, Double> pool = null;
+
+        for (int i = 0; i < groups.size(); i++) {
+            ModifierGroup group = groups.get(i);
+            boolean perDie = isPerDie(group);
+
+            if (pool == null) {
+                if (perDie) {
+                    unit = applyPerDie(unit, group);
+                    continue;
+                }
+
+                boolean isLast = i == groups.size() - 1;
+                boolean isKeepOrDrop = group.type == TokenType.MODIFIER_KEEP || group.type == TokenType.MODIFIER_DROP;
+                if (isLast && isKeepOrDrop && maxUnitSize(unit) <= 1)
+                    return orderStatistics(unit, group);
+
+                pool = collapse(unit);
+            }
+
+            pool = perDie ? applyPerDie(pool, group) : applyPoolWide(pool, group);
+        }
+
+        if (pool == null)
+            return convolvePower(sumPmf(unit), numDice);
+
+        return sumDistribution(pool);
+    }
+
+    // === MODIFIER CLASSIFICATION ===
+
+    private void validate(ModifierGroup group) throws Exception {
+        ValidatedModifier modifier = group.modifiers.get(0);
+
+        if (group.type == TokenType.MODIFIER_MINIMUM && modifier.selector() != TokenType.SELECTOR_LITERAL)
+            throw new Exception("MINIMUM modifier can only use literal selector.");
+        if (group.type == TokenType.MODIFIER_MAXIMUM && modifier.selector() != TokenType.SELECTOR_LITERAL)
+            throw new Exception("MAXIMUM modifier can only use literal selector.");
+    }
+
+    private static boolean isRankSelector(TokenType selector) {
+        return selector == TokenType.SELECTOR_HIGHEST || selector == TokenType.SELECTOR_LOWEST;
+    }
+
+    private static boolean isPerDie(ModifierGroup group) {
+        if (group.type == TokenType.MODIFIER_REROLL_ADD)
+            return false;
+
+        for (ValidatedModifier modifier : group.modifiers) {
+            if (isRankSelector(modifier.selector()))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesValue(ValidatedModifier modifier, int value) {
+        switch (modifier.selector()) {
+            case SELECTOR_GREATER_THAN:
+                return value > modifier.value();
+            case SELECTOR_LESS_THAN:
+                return value < modifier.value();
+            case SELECTOR_LITERAL:
+                return value == modifier.value();
+            default:
+                return false;
+        }
+    }
+
+    // Matches by rank among keptCount dice sorted ascending, or by value for the other selectors
+    private static boolean matches(ValidatedModifier modifier, int rank, int keptCount, int value) {
+        switch (modifier.selector()) {
+            case SELECTOR_HIGHEST:
+                return rank >= keptCount - modifier.value();
+            case SELECTOR_LOWEST:
+                return rank < modifier.value();
+            default:
+                return matchesValue(modifier, value);
+        }
+    }
+
+    private static boolean matchesAny(List<ValidatedModifier> modifiers, int rank, int keptCount, int value) {
+        for (ValidatedModifier modifier : modifiers) {
+            if (matches(modifier, rank, keptCount, value))
+                return true;
+        }
+        return false;
+    }
+
+    // === PER-DIE MODIFIERS ===
+
+    private Map<Multiset, Double> applyPerDie(Map<Multiset, Double> states, ModifierGroup group) throws Exception {
+        Map<Integer, Map<Multiset, Double>> transforms = new HashMap<>();
+        Map<Multiset, Double> result = new HashMap<>();
+
+        for (Map.Entry<Multiset, Double> state : states.entrySet()) {
+            Map<Multiset, Double> current = Map.of(Multiset.EMPTY, state.getValue());
+
+            for (int value : state.getKey().values) {
+                Map<Multiset, Double> transform = transforms.get(value);
+                if (transform == null) {
+                    transform = transformDie(group, value);
+                    transforms.put(value, transform);
+                }
+                current = cross(current, transform);
+            }
+
+            mergeInto(result, current, 1.0);
+        }
+
+        return result;
+    }
+
+    // Distribution of the kept dice that a single kept die with the given value turns into
+    private Map<Multiset, Double> transformDie(ModifierGroup group, int value) throws Exception {
+        ValidatedModifier modifier = group.modifiers.get(0);
+
+        switch (group.type) {
+            case MODIFIER_MINIMUM:
+                return Map.of(Multiset.of(value < modifier.value() ? modifier.value() : value), 1.0);
+            case MODIFIER_MAXIMUM:
+                return Map.of(Multiset.of(value > modifier.value() ? modifier.value() : value), 1.0);
+            case MODIFIER_REROLL:
+                return matchesValue(modifier, value) ? rerolledDie(modifier) : Map.of(Multiset.of(value), 1.0);
+            case MODIFIER_REROLL_ONCE:
+                return matchesValue(modifier, value) ? freshDie : Map.of(Multiset.of(value), 1.0);
+            case MODIFIER_EXPLODE:
+                if (!matchesValue(modifier, value))
+                    return Map.of(Multiset.of(value), 1.0);
+                return cross(Map.of(Multiset.of(value), 1.0), explodeChain(modifier));
+            case MODIFIER_KEEP:
+                return matchesAny(group.modifiers, 0, 0, value) ? Map.of(Multiset.of(value), 1.0)
+                        : Map.of(Multiset.EMPTY, 1.0);
+            case MODIFIER_DROP:
+                return matchesAny(group.modifiers, 0, 0, value) ? Map.of(Multiset.EMPTY, 1.0)
+                        : Map.of(Multiset.of(value), 1.0);
+            default:
+                throw new Exception("Unsupported modifier for exact calculation.");
+        }
+    }
+
+    // A recursive reroll is a fresh die conditioned on not matching the selector
+    private Map<Multiset, Double> rerolledDie(ValidatedModifier modifier) throws Exception {
+        int nonMatching = 0;
+        for (int face = 1; face <= numSides; face++) {
+            if (!matchesValue(modifier, face))
+                nonMatching++;
+        }
+
+        if (nonMatching == 0)
+            throw new Exception("Too many dice rolled.");
+
+        Map<Multiset, Double> result = new HashMap<>();
+        for (int face = 1; face <= numSides; face++) {
+            if (!matchesValue(modifier, face))
+                result.put(Multiset.of(face), 1.0 / nonMatching);
+        }
+        return result;
+    }
+
+    // Every die rolled after a matching die: matching dice keep the chain going, the first
+    // non-matching die ends it. The series is truncated once its remaining mass is negligible.
+    private Map<Multiset, Double> explodeChain(ValidatedModifier modifier) throws Exception {
+        Map<Multiset, Double> cached = explodeChains.get(modifier);
+        if (cached != null)
+            return cached;
+
+        Map<Multiset, Double> result = new HashMap<>();
+        Map<Multiset, Double> frontier = Map.of(Multiset.EMPTY, 1.0);
+        double frontierMass = 1.0;
+
+        while (!frontier.isEmpty() && frontierMass > CHAIN_CUTOFF) {
+            Map<Multiset, Double> next = new HashMap<>();
+            frontierMass = 0;
+
+            for (Map.Entry<Multiset, Double> state : frontier.entrySet()) {
+                for (int face = 1; face <= numSides; face++) {
+                    Multiset dice = state.getKey().union(Multiset.of(face));
+                    double p = state.getValue() / numSides;
+
+                    if (!matchesValue(modifier, face)) {
+                        result.merge(dice, p, Double::sum);
+                    } else if (p > PRUNE_PROBABILITY) {
+                        next.merge(dice, p, Double::sum);
+                        frontierMass += p;
+                    }
+                }
+            }
+
+            if (next.size() + result.size() > maxStates)
+                throw new Exception("Explosion is too complex for exact calculation.");
+
+            if (frontierMass >= 1.0)
+                throw new Exception("Too many dice rolled.");
+
+            frontier = next;
+        }
+
+        explodeChains.put(modifier, result);
+        return result;
+    }
+
+    // === POOL-WIDE MODIFIERS ===
+
+    private Map<Multiset, Double> collapse(Map<Multiset, Double> unit) throws Exception {
+        Map<Multiset, Double> pool = Map.of(Multiset.EMPTY, 1.0);
+        for (int i = 0; i < numDice; i++)
+            pool = cross(pool, unit);
+        return pool;
+    }
+
+    private Map<Multiset, Double> applyPoolWide(Map<Multiset, Double> pool, ModifierGroup group) throws Exception {
+        ValidatedModifier modifier = group.modifiers.get(0);
+        Map<Multiset, Double> result = new HashMap<>();
+
+        for (Map.Entry<Multiset, Double> state : pool.entrySet()) {
+            int[] values = state.getKey().values;
+            int keptCount = values.length;
+            double p = state.getValue();
+
+            switch (group.type) {
+                case MODIFIER_KEEP:
+                case MODIFIER_DROP: {
+                    boolean keep = group.type == TokenType.MODIFIER_KEEP;
+                    int[] kept = new int[keptCount];
+                    int size = 0;
+                    for (int rank = 0; rank < keptCount; rank++) {
+                        if (matchesAny(group.modifiers, rank, keptCount, values[rank]) == keep)
+                            kept[size++] = values[rank];
+                    }
+                    result.merge(Multiset.ofSorted(Arrays.copyOf(kept, size)), p, Double::sum);
+                }
+                    break;
+                case MODIFIER_EXPLODE: {
+                    // h/l explodes each selected die exactly once
+                    int count = 0;
+                    for (int rank = 0; rank < keptCount; rank++) {
+                        if (matches(modifier, rank, keptCount, values[rank]))
+                            count++;
+                    }
+                    mergeInto(result, cross(Map.of(state.getKey(), 1.0), freshDice(count)), p);
+                }
+                    break;
+                case MODIFIER_REROLL_ONCE: {
+                    int[] kept = new int[keptCount];
+                    int size = 0;
+                    for (int rank = 0; rank < keptCount; rank++) {
+                        if (!matches(modifier, rank, keptCount, values[rank]))
+                            kept[size++] = values[rank];
+                    }
+                    Multiset remaining = Multiset.ofSorted(Arrays.copyOf(kept, size));
+                    mergeInto(result, cross(Map.of(remaining, 1.0), freshDice(keptCount - size)), p);
+                }
+                    break;
+                case MODIFIER_REROLL_ADD: {
+                    // Only the first matching die is rerolled, and it stays kept
+                    boolean anyMatch = false;
+                    for (int rank = 0; rank < keptCount && !anyMatch; rank++)
+                        anyMatch = matches(modifier, rank, keptCount, values[rank]);
+                    mergeInto(result, cross(Map.of(state.getKey(), 1.0), freshDice(anyMatch ? 1 : 0)), p);
+                }
+                    break;
+                case MODIFIER_REROLL:
+                    if (keptCount > 0)
+                        throw new Exception("REROLL modifier cannot use '"
+                                + (modifier.selector() == TokenType.SELECTOR_HIGHEST ? "h" : "l") + "' selector.");
+                    result.merge(state.getKey(), p, Double::sum);
+                    break;
+                default:
+                    throw new Exception("Unsupported modifier for exact calculation.");
+            }
+
+            if (result.size() > maxStates)
+                throw new Exception("Dice pool is too large for exact calculation.");
+        }
+
+        return result;
+    }
+
+    private Map<Multiset, Double> freshDice(int count) throws Exception {
+        if (freshDiceByCount.isEmpty())
+            freshDiceByCount.add(Map.of(Multiset.EMPTY, 1.0));
+
+        while (freshDiceByCount.size() <= count)
+            freshDiceByCount.add(cross(freshDiceByCount.get(freshDiceByCount.size() - 1), freshDie));
+
+        return freshDiceByCount.get(count);
+    }
+
+    // === ORDER STATISTICS ===
+
+    // Final keep/drop union over a pool where every unit holds at most one kept die.
+    // Conditions on the number of kept dice k, then walks face values in ascending order,
+    // drawing how many of the remaining dice land on each face from a binomial. Dice landing
+    // on a face occupy a contiguous block of ranks, which decides how many of them survive.
+    private Distribution orderStatistics(Map<Multiset, Double> unit, ModifierGroup group) throws Exception {
+        int maxValue = 0;
+        double emptyProbability = 0;
+        Map<Integer, Double> faceProbabilities = new HashMap<>();
+
+        for (Map.Entry<Multiset, Double> state : unit.entrySet()) {
+            if (state.getKey().size() == 0) {
+                emptyProbability += state.getValue();
+            } else {
+                int value = state.getKey().values[0];
+                faceProbabilities.merge(value, state.getValue(), Double::sum);
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+
+        int[] faces = faceProbabilities.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        double keptProbability = 1 - emptyProbability;
+        double[] faceWeights = new double[faces.length];
+        for (int i = 0; i < faces.length; i++)
+            faceWeights[i] = faceProbabilities.get(faces[i]) / keptProbability;
+
+        long work = (long) faces.length * numDice * numDice * ((long) numDice * maxValue + 1) / 2;
+        if (emptyProbability > 0)
+            work *= numDice;
+        if (work > maxWork)
+            throw new Exception("Dice pool is too large for exact calculation.");
+
+        initLogFactorials(numDice);
+
+        double[] result = new double[(int) ((long) numDice * maxValue + 1)];
+        double[] keptCounts = binomialPmf(numDice, keptProbability);
+
+        for (int keptCount = 0; keptCount <= numDice; keptCount++) {
+            if (keptCounts[keptCount] == 0)
+                continue;
+
+            double[] sums = keptSumPmf(keptCount, faces, faceWeights, maxValue, group);
+            for (int s = 0; s < sums.length; s++)
+                result[s] += keptCounts[keptCount] * sums[s];
+        }
+
+        return Distribution.fromIntPmf(result, 0);
+    }
+
+    private double[] keptSumPmf(int keptCount, int[] faces, double[] faceWeights, int maxValue, ModifierGroup group) {
+        boolean keep = group.type == TokenType.MODIFIER_KEEP;
+        int maxSum = keptCount * maxValue;
+
+        // dp[c][s]: c dice placed so far (the lowest c ranks), s is the surviving total
+        double[][] dp = new double[keptCount + 1][];
+        dp[0] = new double[] { 1.0 };
+        double remainingWeight = 1.0;
+
+        for (int f = 0; f < faces.length; f++) {
+            int face = faces[f];
+            boolean lastFace = f == faces.length - 1;
+            double p = lastFace ? 1.0 : Math.min(1.0, faceWeights[f] / remainingWeight);
+            remainingWeight -= faceWeights[f];
+
+            double[][] next = new double[keptCount + 1][];
+
+            for (int c = 0; c <= keptCount; c++) {
+                if (dp[c] == null)
+                    continue;
+
+                int n = keptCount - c;
+                double[] counts = binomialPmf(n, p);
+
+                for (int m = lastFace ? n : 0; m <= n; m++) {
+                    if (counts[m] == 0)
+                        continue;
+
+                    int survivors = 0;
+                    for (int rank = c; rank < c + m; rank++) {
+                        if (matchesAny(group.modifiers, rank, keptCount, face) == keep)
+                            survivors++;
+                    }
+
+                    int shift = survivors * face;
+                    if (next[c + m] == null)
+                        next[c + m] = new double[maxSum + 1];
+
+                    double[] from = dp[c];
+                    double[] to = next[c + m];
+                    for (int s = 0; s < from.length; s++) {
+                        if (from[s] != 0)
+                            to[s + shift] += from[s] * counts[m];
+                    }
+                }
+            }
+
+            dp = next;
+        }
+
+        return dp[keptCount] == null ? new double[] { 1.0 } : dp[keptCount];
+    }
+
+    private void initLogFactorials(int n) {
+        logFactorials = new double[n + 1];
+        for (int i = 1; i <= n; i++)
+            logFactorials[i] = logFactorials[i - 1] + Math.log(i);
+    }
+
+    private double[] binomialPmf(int n, double p) {
+        double[] pmf = new double[n + 1];
+
+        if (p <= 0) {
+            pmf[0] = 1;
+        } else if (p >= 1) {
+            pmf[n] = 1;
+        } else {
+            double logP = Math.log(p);
+            double logQ = Math.log1p(-p);
+            for (int m = 0; m <= n; m++)
+                pmf[m] = Math.exp(logFactorials[n] - logFactorials[m] - logFactorials[n - m] + m * logP + (n - m) * logQ);
+        }
+
+        return pmf;
+    }
+
+    // === SUMS ===
+
+    private double[] uniformPmf() {
+        double[] pmf = new double[numSides + 1];
+        for (int face = 1; face <= numSides; face++)
+            pmf[face] = 1.0 / numSides;
+        return pmf;
+    }
+
+    private double[] sumPmf(Map<Multiset, Double> states) throws Exception {
+        long maxSum = 0;
+        for (Multiset state : states.keySet())
+            maxSum = Math.max(maxSum, state.sum());
+
+        if (maxSum > maxStates)
+            throw new Exception("Dice totals are too large for exact calculation.");
+
+        double[] pmf = new double[(int) maxSum + 1];
+        for (Map.Entry<Multiset, Double> state : states.entrySet())
+            pmf[(int) state.getKey().sum()] += state.getValue();
+        return pmf;
+    }
+
+    private Distribution sumDistribution(Map<Multiset, Double> states) throws Exception {
+        return Distribution.fromIntPmf(sumPmf(states), 0);
+    }
+
+    // Distribution of the sum of count independent copies of pmf
+    private Distribution convolvePower(double[] pmf, int count) throws Exception {
+        long finalLength = (long) (pmf.length - 1) * count + 1;
+        if (finalLength * pmf.length / 2 * count > maxWork)
+            throw new Exception("Dice pool is too large for exact calculation.");
+
+        double[] result = { 1.0 };
+        for (int i = 0; i < count; i++) {
+            double[] next = new double[result.length + pmf.length - 1];
+            for (int a = 0; a < result.length; a++) {
+                if (result[a] == 0)
+                    continue;
+                for (int b = 0; b < pmf.length; b++)
+                    next[a + b] += result[a] * pmf[b];
+            }
+            result = next;
+        }
+
+        return Distribution.fromIntPmf(result, 0);
+    }
+
+    // === HELPERS ===
+
+    private static int maxUnitSize(Map<Multiset, Double> unit) {
+        int max = 0;
+        for (Multiset state : unit.keySet())
+            max = Math.max(max, state.size());
+        return max;
+    }
+
+    private Map<Multiset, Double> cross(Map<Multiset, Double> a, Map<Multiset, Double> b) throws Exception {
+        Map<Multiset, Double> result = new HashMap<>();
+
+        for (Map.Entry<Multiset, Double> left : a.entrySet()) {
+            for (Map.Entry<Multiset, Double> right : b.entrySet())
+                result.merge(left.getKey().union(right.getKey()), left.getValue() * right.getValue(), Double::sum);
+
+            if (result.size() > maxStates)
+                throw new Exception("Dice pool is too large for exact calculation.");
+        }
+
+        return result;
+    }
+
+    private void mergeInto(Map<Multiset, Double> target, Map<Multiset, Double> source, double weight)
+            throws Exception {
+        for (Map.Entry<Multiset, Double> entry : source.entrySet())
+            target.merge(entry.getKey(), entry.getValue() * weight, Double::sum);
+
+        if (target.size() > maxStates)
+            throw new Exception("Dice pool is too large for exact calculation.");
+    }
+}
@@ -0,0 +1,179 @@
+package com.makesvaporware.diceparserjava.distribution;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Immutable discrete probability distribution over the totals of an expression.
+// Outcomes are sorted ascending and only outcomes with non-zero probability are stored.
+public class Distribution {
+    private final double[] outcomes;
+    private final double[] probabilities;
+
+    Distribution(double[] outcomes, double[] probabilities) {
+        this.outcomes = outcomes;
+        this.probabilities = probabilities;
+    }
+
+    public static Distribution constant(double value) {
+        return new Distribution(new double[] { value + 0.0 }, new double[] { 1.0 });
+    }
+
+    // pmf[i] is the probability of the outcome offset + i
+    static Distribution fromIntPmf(double[] pmf, long offset) {
+        int size = 0;
+        for (double p : pmf) {
+            if (p > 0)
+                size++;
+        }
+
+        double[] outcomes = new double[size];
+        double[] probabilities = new double[size];
+        int index = 0;
+
+        for (int i = 0; i < pmf.length; i++) {
+            if (pmf[i] > 0) {
+                outcomes[index] = offset + i;
+                probabilities[index] = pmf[i];
+                index++;
+            }
+        }
+
+        return new Distribution(outcomes, probabilities);
+    }
+
+    public static Distribution fromMap(Map<Double, Double> pmf) {
+        TreeMap<Double, Double> sorted = new TreeMap<>();
+        for (Map.Entry<Double, Double> entry : pmf.entrySet()) {
+            if (entry.getValue() > 0)
+                sorted.merge(entry.getKey() + 0.0, entry.getValue(), Double::sum);
+        }
+
+        double[] outcomes = new double[sorted.size()];
+        double[] probabilities = new double[sorted.size()];
+        int index = 0;
+
+        for (Map.Entry<Double, Double> entry : sorted.entrySet()) {
+            outcomes[index] = entry.getKey();
+            probabilities[index] = entry.getValue();
+            index++;
+        }
+
+        return new Distribution(outcomes, probabilities);
+    }
+
+    // === ACCESSORS ===
+
+    public int size() {
+        return outcomes.length;
+    }
+
+    public double getOutcome(int index) {
+        return outcomes[index];
+    }
+
+    public double getProbability(int index) {
+        return probabilities[index];
+    }
+
+    public double[] getOutcomes() {
+        return outcomes.clone();
+    }
+
+    public double[] getProbabilities() {
+        return probabilities.clone();
+    }
+
+    public Map<Double, Double> toMap() {
+        Map<Double, Double> pmf = new LinkedHashMap<>();
+        for (int i = 0; i < outcomes.length; i++)
+            pmf.put(outcomes[i], probabilities[i]);
+        return pmf;
+    }
+
+    public double probabilityOf(double outcome) {
+        int index = Arrays.binarySearch(outcomes, outcome + 0.0);
+        return index >= 0 ? probabilities[index] : 0;
+    }
+
+    // P(X <= value)
+    public double cumulativeProbability(double value) {
+        double total = 0;
+        for (int i = 0; i < outcomes.length && outcomes[i] <= value; i++)
+            total += probabilities[i];
+        return total / totalProbability();
+    }
+
+    // Sums to 1 unless an unbounded explode/reroll chain had to be truncated
+    public double totalProbability() {
+        double total = 0;
+        for (double p : probabilities)
+            total += p;
+        return total;
+    }
+
+    // === STATISTICS ===
+
+    public double min() {
+        return outcomes[0];
+    }
+
+    public double max() {
+        return outcomes[outcomes.length - 1];
+    }
+
+    public double mean() {
+        double sum = 0;
+        for (int i = 0; i < outcomes.length; i++)
+            sum += outcomes[i] * probabilities[i];
+        return sum / totalProbability();
+    }
+
+    public double variance() {
+        double mean = mean();
+        double sum = 0;
+        for (int i = 0; i < outcomes.length; i++) {
+            double delta = outcomes[i] - mean;
+            sum += delta * delta * probabilities[i];
+        }
+        return sum / totalProbability();
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    // Smallest outcome whose cumulative probability reaches the given percentile (0-100)
+    public double percentile(double percent) {
+        if (percent < 0 || percent > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+
+        double target = percent / 100 * totalProbability();
+        double cumulative = 0;
+
+        for (int i = 0; i < outcomes.length; i++) {
+            cumulative += probabilities[i];
+            if (cumulative >= target)
+                return outcomes[i];
+        }
+
+        return outcomes[outcomes.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("mean=%.4f, stddev=%.4f, min=%s, max=%s", mean(), standardDeviation(),
+                formatOutcome(min()), formatOutcome(max())));
+
+        for (int i = 0; i < outcomes.length; i++)
+            sb.append(String.format("%n%s: %.6f%%", formatOutcome(outcomes[i]), probabilities[i] * 100));
+
+        return sb.toString();
+    }
+
+    private static String formatOutcome(double outcome) {
+        return outcome == (long) outcome ? String.valueOf((long) outcome) : String.valueOf(outcome);
+    }
+}
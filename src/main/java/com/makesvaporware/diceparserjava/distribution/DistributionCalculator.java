@@ -0,0 +1,118 @@
+package com.makesvaporware.diceparserjava.distribution;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.makesvaporware.diceparserjava.lexer.Token;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.BinaryExprNode;
+import com.makesvaporware.diceparserjava.parser.DiceExprNode;
+import com.makesvaporware.diceparserjava.parser.FloatLiteralNode;
+import com.makesvaporware.diceparserjava.parser.IntegerLiteralNode;
+import com.makesvaporware.diceparserjava.parser.ParenthesizedExprNode;
+import com.makesvaporware.diceparserjava.parser.UnaryExprNode;
+
+// Computes the exact probability distribution of an expression's total without rolling any dice.
+// Throws when an expression is too expensive to compute exactly; use simulation for those instead.
+public class DistributionCalculator {
+    public static final int DEFAULT_MAX_STATES = 250_000;
+    public static final long DEFAULT_MAX_WORK = 500_000_000L;
+
+    private final int maxStates;
+    private final long maxWork;
+
+    public DistributionCalculator() {
+        this(DEFAULT_MAX_STATES, DEFAULT_MAX_WORK);
+    }
+
+    // maxStates bounds the number of distinct outcomes/pool states held at once,
+    // maxWork bounds the number of inner-loop steps spent on a single dice term
+    public DistributionCalculator(int maxStates, long maxWork) {
+        this.maxStates = maxStates;
+        this.maxWork = maxWork;
+    }
+
+    public Distribution calculate(ASTNode node) throws Exception {
+        if (node instanceof IntegerLiteralNode)
+            return Distribution.constant(((IntegerLiteralNode) node).getValue());
+
+        if (node instanceof FloatLiteralNode)
+            return Distribution.constant(((FloatLiteralNode) node).getValue());
+
+        if (node instanceof ParenthesizedExprNode)
+            return calculate(((ParenthesizedExprNode) node).getInner());
+
+        if (node instanceof UnaryExprNode)
+            return calculateUnary((UnaryExprNode) node);
+
+        if (node instanceof BinaryExprNode)
+            return calculateBinary((BinaryExprNode) node);
+
+        if (node instanceof DiceExprNode)
+            return new DicePoolCalculator((DiceExprNode) node, maxStates, maxWork).calculate();
+
+        throw new Exception("Unsupported expression for exact calculation.");
+    }
+
+    private Distribution calculateUnary(UnaryExprNode node) throws Exception {
+        Distribution child = calculate(node.getChild());
+
+        switch (node.getOperator()) {
+            case PLUS:
+                return child;
+            case MINUS: {
+                Map<Double, Double> pmf = new HashMap<>();
+                for (int i = 0; i < child.size(); i++)
+                    pmf.merge(-child.getOutcome(i), child.getProbability(i), Double::sum);
+                return Distribution.fromMap(pmf);
+            }
+            default:
+                throw new Exception("Unknown unary operator: " + Token.typeToString(node.getOperator()));
+        }
+    }
+
+    private Distribution calculateBinary(BinaryExprNode node) throws Exception {
+        Distribution left = calculate(node.getLeft());
+        Distribution right = calculate(node.getRight());
+
+        if ((long) left.size() * right.size() > maxWork)
+            throw new Exception("Expression is too large for exact calculation.");
+
+        Map<Double, Double> pmf = new HashMap<>();
+
+        for (int i = 0; i < left.size(); i++) {
+            double a = left.getOutcome(i);
+
+            for (int j = 0; j < right.size(); j++) {
+                double b = right.getOutcome(j);
+                double outcome;
+
+                switch (node.getOperator()) {
+                    case PLUS:
+                        outcome = a + b;
+                        break;
+                    case MINUS:
+                        outcome = a - b;
+                        break;
+                    case MULTIPLY:
+                        outcome = a * b;
+                        break;
+                    case DIVIDE:
+                        if (b == 0)
+                            throw new Exception("Division by zero");
+                        outcome = a / b;
+                        break;
+                    default:
+                        throw new Exception("Unknown binary operator: " + Token.typeToString(node.getOperator()));
+                }
+
+                pmf.merge(outcome + 0.0, left.getProbability(i) * right.getProbability(j), Double::sum);
+            }
+
+            if (pmf.size() > maxStates)
+                throw new Exception("Expression has too many outcomes for exact calculation.");
+        }
+
+        return Distribution.fromMap(pmf);
+    }
+}
@@ -0,0 +1,66 @@
+package com.makesvaporware.diceparserjava.distribution;
+
+import java.util.Arrays;
+
+// Sorted bag of kept die values. Discarded dice never influence later modifiers, so the
+// kept values are all the state a dice pool needs for exact calculation.
+final class Multiset {
+    static final Multiset EMPTY = new Multiset(new int[0]);
+
+    final int[] values;
+    private final int hash;
+
+    private Multiset(int[] values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    static Multiset of(int value) {
+        return new Multiset(new int[] { value });
+    }
+
+    // values must already be sorted
+    static Multiset ofSorted(int[] values) {
+        return values.length == 0 ? EMPTY : new Multiset(values);
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int value : values)
+            sum += value;
+        return sum;
+    }
+
+    Multiset union(Multiset other) {
+        if (other.values.length == 0)
+            return this;
+        if (values.length == 0)
+            return other;
+
+        int[] merged = new int[values.length + other.values.length];
+        int i = 0, j = 0, k = 0;
+
+        while (i < values.length && j < other.values.length)
+            merged[k++] = values[i] <= other.values[j] ? values[i++] : other.values[j++];
+        while (i < values.length)
+            merged[k++] = values[i++];
+        while (j < other.values.length)
+            merged[k++] = other.values[j++];
+
+        return new Multiset(merged);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Multiset && hash == ((Multiset) o).hash && Arrays.equals(values, ((Multiset) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
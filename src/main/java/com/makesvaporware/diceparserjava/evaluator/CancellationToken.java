@@ -0,0 +1,45 @@
+package com.makesvaporware.diceparserjava.evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+// Lets another thread stop an evaluation, either explicitly with cancel() or once a deadline passes.
+// Evaluation checks the token between dice terms and periodically inside modifier loops, so a cancelled
+// evaluation throws EvaluationCancelledException shortly after rather than running to the dice limit.
+// One token can be shared by every evaluation of a request.
+public class CancellationToken {
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled = false;
+
+    public CancellationToken() {
+        this.deadlineNanos = 0;
+        this.hasDeadline = false;
+    }
+
+    public CancellationToken(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("timeout must be positive");
+
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || isPastDeadline();
+    }
+
+    public void throwIfCancelled() throws EvaluationCancelledException {
+        if (cancelled)
+            throw new EvaluationCancelledException("Evaluation was cancelled.");
+        if (isPastDeadline())
+            throw new EvaluationCancelledException("Evaluation timed out.");
+    }
+
+    private boolean isPastDeadline() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+}
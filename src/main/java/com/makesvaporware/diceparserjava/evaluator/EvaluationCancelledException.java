@@ -0,0 +1,8 @@
+package com.makesvaporware.diceparserjava.evaluator;
+
+// Thrown when an evaluation's CancellationToken is cancelled or its deadline passes
+public class EvaluationCancelledException extends Exception {
+    public EvaluationCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,58 @@
+package com.makesvaporware.diceparserjava.evaluator;
+
+import com.makesvaporware.diceparserjava.parser.RollBuffers;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Per-evaluation settings threaded through ASTNode.evaluate(), plus the scratch buffers dice terms
+// roll into. Parsed trees are immutable and can be evaluated from any number of threads at once,
+// but a context must only be used by one thread at a time.
+public class EvaluationContext {
+    private static final ThreadLocal<EvaluationContext> THREAD_CONTEXTS = ThreadLocal
+            .withInitial(() -> new EvaluationContext(RandomSource.threadLocal()));
+
+    private final RandomSource random;
+    private final CancellationToken cancellation;
+    private final RollBuffers buffers;
+
+    public EvaluationContext(RandomSource random) {
+        this(random, null);
+    }
+
+    // cancellation may be null for evaluations that always run to completion
+    public EvaluationContext(RandomSource random, CancellationToken cancellation) {
+        this(random, cancellation, new RollBuffers());
+    }
+
+    private EvaluationContext(RandomSource random, CancellationToken cancellation, RollBuffers buffers) {
+        this.random = random;
+        this.cancellation = cancellation;
+        this.buffers = buffers;
+    }
+
+    // The calling thread's context, rolling from ThreadLocalRandom. Don't hand it to other threads.
+    public static EvaluationContext defaultContext() {
+        return THREAD_CONTEXTS.get();
+    }
+
+    // Same random source and buffers, so it's bound to the same thread as this context
+    public EvaluationContext withCancellation(CancellationToken cancellation) {
+        return new EvaluationContext(random, cancellation, buffers);
+    }
+
+    public RandomSource getRandom() {
+        return random;
+    }
+
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    public RollBuffers getBuffers() {
+        return buffers;
+    }
+
+    public void checkCancelled() throws EvaluationCancelledException {
+        if (cancellation != null)
+            cancellation.throwIfCancelled();
+    }
+}
@@ -1,11 +1,139 @@
 package com.makesvaporware.diceparserjava.evaluator;
 
+import com.makesvaporware.diceparserjava.render.MarkdownRenderer;
+
+// Total of an evaluated tree along with its shape: literals, operators and the dice each term rolled.
+// Whole-number totals are also kept exactly as a long, since floats skip whole numbers past 2^24 and
+// 99999d1000 can total almost 10^8. The breakdown string is only rendered when getDisplayString() is
+// first called, so callers that just want the total never pay for it. Other formats, and truncated
+// breakdowns of huge pools, come from the renderers in the render package.
 public class EvaluationResult {
-    public float value;
-    public String displayString;
+    public enum Kind {
+        LITERAL,
+        DICE,
+        UNARY,
+        BINARY,
+        PARENTHESIZED
+    }
+
+    private final Kind kind;
+    private final float value;
+    private final long exactValue;
+    private final boolean exact;
+    private final String text;
+    private final RollLog rolls;
+    private final EvaluationResult left;
+    private final EvaluationResult right;
+
+    // Rendered on first read; racing threads at worst render it twice
+    private String displayString;
+
+    public EvaluationResult(float value, String text) {
+        this(Kind.LITERAL, value, 0, false, text, null, null, null);
+    }
 
-    public EvaluationResult(float value, String displayString) {
+    private EvaluationResult(Kind kind, float value, long exactValue, boolean exact, String text, RollLog rolls,
+            EvaluationResult left, EvaluationResult right) {
+        this.kind = kind;
         this.value = value;
-        this.displayString = displayString;
+        this.exactValue = exactValue;
+        this.exact = exact;
+        this.text = text;
+        this.rolls = rolls;
+        this.left = left;
+        this.right = right;
+    }
+
+    // The long overloads below are for exact totals, the float ones for totals that aren't whole numbers
+    // or that overflowed a long
+    public static EvaluationResult literal(long value, String text) {
+        return new EvaluationResult(Kind.LITERAL, value, value, true, text, null, null, null);
+    }
+
+    public static EvaluationResult dice(long total, String notation, RollLog rolls) {
+        return new EvaluationResult(Kind.DICE, total, total, true, notation, rolls, null, null);
+    }
+
+    public static EvaluationResult unary(long value, String operator, EvaluationResult child) {
+        return new EvaluationResult(Kind.UNARY, value, value, true, operator, null, child, null);
+    }
+
+    public static EvaluationResult unary(float value, String operator, EvaluationResult child) {
+        return new EvaluationResult(Kind.UNARY, value, 0, false, operator, null, child, null);
+    }
+
+    public static EvaluationResult binary(long value, String operator, EvaluationResult left,
+            EvaluationResult right) {
+        return new EvaluationResult(Kind.BINARY, value, value, true, operator, null, left, right);
+    }
+
+    public static EvaluationResult binary(float value, String operator, EvaluationResult left,
+            EvaluationResult right) {
+        return new EvaluationResult(Kind.BINARY, value, 0, false, operator, null, left, right);
+    }
+
+    public static EvaluationResult parenthesized(EvaluationResult inner) {
+        return new EvaluationResult(Kind.PARENTHESIZED, inner.value, inner.exactValue, inner.exact, null, null,
+                inner, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    // True when the total was computed in long arithmetic: the expression has no float literals or
+    // division, and is too small to overflow a long (see ASTNode.integerBound())
+    public boolean isExact() {
+        return exact;
+    }
+
+    public long getExactValue() {
+        if (!exact)
+            throw new ArithmeticException("Total is not an exact whole number: " + value);
+        return exactValue;
+    }
+
+    // The total as the prompt and batch output print it, e.g. "12" or "7.5"
+    public String getTotalString() {
+        if (exact)
+            return Long.toString(exactValue);
+        return value == (int) value ? String.valueOf((int) value) : String.valueOf(value);
+    }
+
+    // The literal as written, the dice notation, or the operator symbol
+    public String getText() {
+        return text;
+    }
+
+    // Dice rolled by a DICE result
+    public RollLog getRolls() {
+        return rolls;
+    }
+
+    // Operand of a UNARY result or the inside of a PARENTHESIZED one
+    public EvaluationResult getChild() {
+        return left;
+    }
+
+    public EvaluationResult getLeft() {
+        return left;
+    }
+
+    public EvaluationResult getRight() {
+        return right;
+    }
+
+    // Full Markdown breakdown, e.g. "4d6kh3 (**6**, ~~2~~, 3, 5) + 2"
+    public String getDisplayString() {
+        String display = displayString;
+        if (display == null) {
+            display = MarkdownRenderer.FULL.render(this);
+            displayString = display;
+        }
+        return display;
     }
 }
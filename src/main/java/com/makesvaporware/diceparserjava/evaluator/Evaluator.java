@@ -1,15 +1,105 @@
 package com.makesvaporware.diceparserjava.evaluator;
 
+import com.makesvaporware.diceparserjava.metrics.EvaluateEvent;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
 import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.ASTPrinter;
+import com.makesvaporware.diceparserjava.random.RandomSource;
 
+// Evaluators built without an explicit context roll with the context of whichever thread calls
+// evaluate(), so they can be built on one thread and run on another. The others share their
+// context's buffers and must only be evaluated from one thread at a time.
 public class Evaluator {
-    private ASTNode root;
+    private final ASTNode root;
+    private final EvaluationContext context;
+    private final CancellationToken cancellation;
 
     public Evaluator(ASTNode root) {
+        this(root, null, null);
+    }
+
+    public Evaluator(ASTNode root, RandomSource random) {
+        this(root, new EvaluationContext(random));
+    }
+
+    // Rolls from ThreadLocalRandom and stops with an EvaluationCancelledException once cancellation fires
+    public Evaluator(ASTNode root, CancellationToken cancellation) {
+        this(root, null, cancellation);
+    }
+
+    public Evaluator(ASTNode root, EvaluationContext context) {
+        this(root, context, null);
+    }
+
+    private Evaluator(ASTNode root, EvaluationContext context, CancellationToken cancellation) {
         this.root = root;
+        this.context = context;
+        this.cancellation = cancellation;
+    }
+
+    private EvaluationContext context() {
+        if (context != null)
+            return context;
+        EvaluationContext current = EvaluationContext.defaultContext();
+        return cancellation == null ? current : current.withCancellation(cancellation);
     }
 
+    // Errors are caught and rethrown after the event rather than handled in a finally block; the JIT
+    // only scalar-replaces an event nothing touches on the exception path, and these run for every roll.
     public EvaluationResult evaluate() throws Exception {
-        return root.evaluate();
+        long start = Metrics.start();
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+
+        EvaluationResult result = null;
+        Exception error = null;
+        try {
+            result = root.evaluate(context());
+        } catch (Exception e) {
+            error = e;
+        }
+
+        event.end();
+        if (event.shouldCommit())
+            commit(event, false, result == null ? 0 : result.getValue(), error);
+        if (error != null)
+            throw error;
+
+        Metrics.stop(Metric.EVALUATE, start);
+        return result;
+    }
+
+    // Total-only evaluation for callers that never look at the display string
+    public float evaluateValue() throws Exception {
+        long start = Metrics.start();
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+
+        float value = 0;
+        Exception error = null;
+        try {
+            value = root.evaluateValue(context());
+        } catch (Exception e) {
+            error = e;
+        }
+
+        event.end();
+        if (event.shouldCommit())
+            commit(event, true, value, error);
+        if (error != null)
+            throw error;
+
+        Metrics.stop(Metric.EVALUATE_VALUE, start);
+        return value;
+    }
+
+    // Only slow evaluations pass the event's threshold, so the notation is only built for those
+    private void commit(EvaluateEvent event, boolean totalOnly, float total, Exception error) {
+        event.expression = ASTPrinter.notation(root);
+        event.totalOnly = totalOnly;
+        event.total = total;
+        event.error = error == null ? null : error.getMessage();
+        event.commit();
     }
 }
@@ -0,0 +1,118 @@
+package com.makesvaporware.diceparserjava.evaluator;
+
+// Compact record of the dice one dice term rolled, in display order, kept so the breakdown can be
+// rendered later (or never) instead of while rolling. Each die has its first face, its final face and
+// whether it was kept; the value changes and explosions in between are events, stored flat with
+// eventStart(i)..eventEnd(i) indexing die i's.
+//
+// Arrays are taken as-is, not copied, and must not be changed afterwards.
+public class RollLog {
+    public static final byte EVENT_VALUE = 0;
+    public static final byte EVENT_EXPLODE = 1;
+
+    private static final byte[] NO_EVENT_TYPES = new byte[0];
+    private static final int[] NO_EVENT_VALUES = new int[0];
+
+    private final int numSides;
+    private final int[] values;
+    private final int[] originalValues;
+    private final boolean[] kept;
+    private final int[] eventOffsets;
+    private final byte[] eventTypes;
+    private final int[] eventValues;
+
+    // Dice without any events
+    public RollLog(int numSides, int[] values, boolean[] kept) {
+        this(numSides, values, values, kept, null, NO_EVENT_TYPES, NO_EVENT_VALUES);
+    }
+
+    // eventOffsets holds size() + 1 offsets into eventTypes/eventValues, or is null when there are no events
+    public RollLog(int numSides, int[] values, int[] originalValues, boolean[] kept, int[] eventOffsets,
+            byte[] eventTypes, int[] eventValues) {
+        if (originalValues.length != values.length || kept.length != values.length)
+            throw new IllegalArgumentException("Per-die arrays must have the same length");
+        if (eventOffsets != null && eventOffsets.length != values.length + 1)
+            throw new IllegalArgumentException("eventOffsets must have one more entry than there are dice");
+
+        this.numSides = numSides;
+        this.values = values;
+        this.originalValues = originalValues;
+        this.kept = kept;
+        this.eventOffsets = eventOffsets;
+        this.eventTypes = eventTypes;
+        this.eventValues = eventValues;
+    }
+
+    public int getNumSides() {
+        return numSides;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    // Final face of die i, after any minimum/maximum modifiers
+    public int value(int i) {
+        return values[i];
+    }
+
+    public int originalValue(int i) {
+        return originalValues[i];
+    }
+
+    public boolean isKept(int i) {
+        return kept[i];
+    }
+
+    public int eventStart(int i) {
+        return eventOffsets == null ? 0 : eventOffsets[i];
+    }
+
+    public int eventEnd(int i) {
+        return eventOffsets == null ? 0 : eventOffsets[i + 1];
+    }
+
+    public byte eventType(int event) {
+        return eventTypes[event];
+    }
+
+    // New face for EVENT_VALUE events
+    public int eventValue(int event) {
+        return eventValues[event];
+    }
+
+    // === BULK ACCESS ===
+
+    // Copies of the per-die arrays, for analytics that want whole columns rather than one die at a time
+
+    public int[] getValues() {
+        return values.clone();
+    }
+
+    public int[] getOriginalValues() {
+        return originalValues.clone();
+    }
+
+    public boolean[] getKept() {
+        return kept.clone();
+    }
+
+    // Sum of the kept dice, exactly
+    public long keptTotal() {
+        long total = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (kept[i])
+                total += values[i];
+        }
+        return total;
+    }
+
+    public int keptCount() {
+        int count = 0;
+        for (int i = 0; i < kept.length; i++) {
+            if (kept[i])
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,352 @@
+package com.makesvaporware.diceparserjava.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal JSON reader/writer for request and result records.
+// Values parse to Map<String, Object>, List<Object>, String, Double, Boolean or null.
+public class Json {
+    // Values that write their own JSON, e.g. a result rendered straight into the output
+    public interface Writable {
+        void writeJson(Appendable out) throws IOException;
+    }
+
+    private final CharSequence text;
+    private int pos = 0;
+
+    private Json(CharSequence text) {
+        this.text = text;
+    }
+
+    // === READING ===
+
+    public static Object parse(CharSequence text) throws Exception {
+        Json json = new Json(text);
+        Object value = json.value();
+        json.skipWhitespace();
+        if (json.pos < text.length())
+            throw json.error("Unexpected trailing characters");
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(CharSequence text) throws Exception {
+        Object value = parse(text);
+        if (!(value instanceof Map))
+            throw new Exception("Expected a JSON object");
+        return (Map<String, Object>) value;
+    }
+
+    private Object value() throws Exception {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw error("Unexpected end of JSON");
+
+        char ch = text.charAt(pos);
+        switch (ch) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (ch == '-' || (ch >= '0' && ch <= '9'))
+                    return number();
+                throw error("Unexpected character '" + ch + "'");
+        }
+    }
+
+    private Map<String, Object> object() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"')
+                throw error("Expected a string key");
+            String key = string();
+
+            skipWhitespace();
+            expect(':');
+            map.put(key, value());
+
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+                continue;
+            }
+            expect('}');
+            return map;
+        }
+    }
+
+    private List<Object> array() throws Exception {
+        List<Object> list = new ArrayList<>();
+        pos++;
+
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+
+        while (true) {
+            list.add(value());
+
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+                continue;
+            }
+            expect(']');
+            return list;
+        }
+    }
+
+    private String string() throws Exception {
+        pos++;
+        StringBuilder sb = new StringBuilder();
+
+        while (true) {
+            if (pos >= text.length())
+                throw error("Unterminated string");
+
+            char ch = text.charAt(pos++);
+            if (ch == '"')
+                return sb.toString();
+            if (ch < 0x20)
+                throw error("Control character in string");
+            if (ch != '\\') {
+                sb.append(ch);
+                continue;
+            }
+
+            if (pos >= text.length())
+                throw error("Unterminated string");
+
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escape);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length())
+                        throw error("Invalid unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.subSequence(pos, pos + 4).toString(), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private Double number() throws Exception {
+        int start = pos;
+        if (peek() == '-')
+            pos++;
+        while (pos < text.length() && "0123456789.eE+-".indexOf(text.charAt(pos)) >= 0)
+            pos++;
+
+        try {
+            return Double.valueOf(text.subSequence(start, pos).toString());
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Invalid number");
+        }
+    }
+
+    private Object literal(String word, Object value) throws Exception {
+        if (pos + word.length() > text.length() || !word.contentEquals(text.subSequence(pos, pos + word.length())))
+            throw error("Unexpected character '" + text.charAt(pos) + "'");
+        pos += word.length();
+        return value;
+    }
+
+    private void expect(char ch) throws Exception {
+        if (peek() != ch)
+            throw error("Expected '" + ch + "'");
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length()) {
+            char ch = text.charAt(pos);
+            if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r')
+                break;
+            pos++;
+        }
+    }
+
+    private Exception error(String message) {
+        return new Exception(message + " at position " + pos);
+    }
+
+    // === WRITING ===
+
+    public static String toJson(Object value) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            write(value, sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    public static void write(Object value, Appendable out) throws IOException {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String string) {
+            writeString(string, out);
+        } else if (value instanceof Float number) {
+            writeNumber(number.floatValue(), out);
+        } else if (value instanceof Long || value instanceof Integer) {
+            out.append(value.toString());
+        } else if (value instanceof Number number) {
+            writeNumber(number.doubleValue(), out);
+        } else if (value instanceof Writable writable) {
+            writable.writeJson(out);
+        } else if (value instanceof Boolean) {
+            out.append(value.toString());
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first)
+                    out.append(',');
+                writeString(String.valueOf(entry.getKey()), out);
+                out.append(':');
+                write(entry.getValue(), out);
+                first = false;
+            }
+            out.append('}');
+        } else if (value instanceof Iterable<?> iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : iterable) {
+                if (!first)
+                    out.append(',');
+                write(item, out);
+                first = false;
+            }
+            out.append(']');
+        } else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    // Whole numbers are written without a fraction; NaN and infinities have no JSON form and are written as strings
+    public static void writeNumber(double value, Appendable out) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            writeString(String.valueOf(value), out);
+        else if (value == (long) value && Math.abs(value) < 1e15)
+            out.append(String.valueOf((long) value));
+        else
+            out.append(String.valueOf(value));
+    }
+
+    // Floats keep their shortest float representation, e.g. 0.1 rather than 0.10000000149011612
+    public static void writeNumber(float value, Appendable out) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value) || value == (long) value)
+            writeNumber((double) value, out);
+        else
+            out.append(String.valueOf(value));
+    }
+
+    public static void writeString(CharSequence value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++)
+            writeEscaped(value.charAt(i), out);
+        out.append('"');
+    }
+
+    // Escapes everything appended to it as JSON string contents, without the quotes
+    public static Appendable escaping(Appendable out) {
+        return new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                return append(csq, 0, csq.length());
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                for (int i = start; i < end; i++)
+                    writeEscaped(csq.charAt(i), out);
+                return this;
+            }
+
+            @Override
+            public Appendable append(char ch) throws IOException {
+                writeEscaped(ch, out);
+                return this;
+            }
+        };
+    }
+
+    private static void writeEscaped(char ch, Appendable out) throws IOException {
+        switch (ch) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (ch < 0x20)
+                    out.append(String.format("\\u%04x", (int) ch));
+                else
+                    out.append(ch);
+        }
+    }
+}
@@ -1,21 +1,48 @@
 package com.makesvaporware.diceparserjava.lexer;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+import com.makesvaporware.diceparserjava.metrics.LexEvent;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
 
+// Lexes a CharSequence, or the UTF-8 bytes of a ByteBuffer slice, without copying the input.
+// Dice notation is pure ASCII, so bytes are read one per character; positions in tokens and
+// error messages are byte offsets for ByteBuffer input.
 public class Lexer {
-    private String str;
-    private int strlen;
+    // Every float in 10^0..10^10 is exact, so dividing an exact mantissa by one rounds correctly
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+    private static final long MAX_ACCUMULATED_MANTISSA = Long.MAX_VALUE / 10 - 10;
+
+    private final CharSequence chars;
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int strlen;
     private int pos;
+    private TokenBuffer tokens;
 
-    public Lexer(String str) {
-        this.str = str;
+    public Lexer(CharSequence str) {
+        this.chars = str;
+        this.bytes = null;
+        this.offset = 0;
         this.strlen = str.length();
         this.pos = 0;
     }
 
+    // Reads from the buffer's position to its limit; the buffer's position is left unchanged
+    public Lexer(ByteBuffer bytes) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.offset = bytes.position();
+        this.strlen = bytes.remaining();
+        this.pos = 0;
+    }
+
     private void advance() {
         pos += 1;
     }
@@ -24,20 +51,66 @@ public class Lexer {
         pos += n;
     }
 
+    private char charAt(int index) {
+        if (bytes != null)
+            return (char) (bytes.get(offset + index) & 0xFF);
+        return chars.charAt(index);
+    }
+
     private char currentChar() {
         if (pos >= strlen)
             return '\0';
-        return str.charAt(pos);
+        return charAt(pos);
     }
 
     private char peekChar(int n) {
         if (pos + n >= strlen)
             return '\0';
-        return str.charAt(pos + n);
+        return charAt(pos + n);
+    }
+
+    private void addToken(TokenType type, int length) {
+        tokens.add(type, -1, pos, pos + length);
+        advance(length);
     }
 
     public List<Token> lex() throws Exception {
-        List<Token> tokens = new ArrayList<>();
+        return lex(new TokenBuffer()).toTokens();
+    }
+
+    // Clears the buffer and fills it with this input's tokens, ending with an END token
+    public TokenBuffer lex(TokenBuffer tokens) throws Exception {
+        long start = Metrics.start();
+        LexEvent event = new LexEvent();
+        event.begin();
+
+        Exception error = null;
+        try {
+            lexTokens(tokens);
+        } catch (Exception e) {
+            error = e;
+        }
+        this.tokens = null;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.expression = text();
+            event.length = strlen;
+            event.tokens = tokens.size();
+            event.error = error == null ? null : error.getMessage();
+            event.commit();
+        }
+        if (error != null)
+            throw error;
+
+        Metrics.stop(Metric.LEX, start);
+        return tokens;
+    }
+
+    private void lexTokens(TokenBuffer tokens) throws Exception {
+        this.tokens = tokens;
+        tokens.clear();
+        pos = 0;
 
         while (pos < strlen) {
             char ch = currentChar();
@@ -45,102 +118,96 @@ public class Lexer {
             if (Character.isWhitespace(ch)) {
                 advance();
             } else if (ch == '+') {
-                tokens.add(new Token(TokenType.PLUS));
-                advance();
+                addToken(TokenType.PLUS, 1);
             } else if (ch == '-') {
-                tokens.add(new Token(TokenType.MINUS));
-                advance();
+                addToken(TokenType.MINUS, 1);
             } else if (ch == '*') {
-                tokens.add(new Token(TokenType.MULTIPLY));
-                advance();
+                addToken(TokenType.MULTIPLY, 1);
             } else if (ch == '/') {
-                tokens.add(new Token(TokenType.DIVIDE));
-                advance();
+                addToken(TokenType.DIVIDE, 1);
             } else if (ch == '(') {
-                tokens.add(new Token(TokenType.LPAREN));
-                advance();
+                addToken(TokenType.LPAREN, 1);
             } else if (ch == ')') {
-                tokens.add(new Token(TokenType.RPAREN));
-                advance();
+                addToken(TokenType.RPAREN, 1);
             } else if (ch == 'd') {
-                tokens.add(new Token(TokenType.DICE));
-                advance();
+                addToken(TokenType.DICE, 1);
             } else if (ch == 'm' && peekChar(1) == 'i') {
-                tokens.add(new Token(TokenType.MODIFIER_MINIMUM));
-                advance(2);
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_MINIMUM, 2);
+                lexSelector();
             } else if (ch == 'm' && peekChar(1) == 'a') {
-                tokens.add(new Token(TokenType.MODIFIER_MAXIMUM));
-                advance(2);
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_MAXIMUM, 2);
+                lexSelector();
             } else if (ch == 'e') {
-                tokens.add(new Token(TokenType.MODIFIER_EXPLODE));
-                advance();
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_EXPLODE, 1);
+                lexSelector();
             } else if (ch == 'r' && peekChar(1) == 'r') {
-                tokens.add(new Token(TokenType.MODIFIER_REROLL));
-                advance(2);
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_REROLL, 2);
+                lexSelector();
             } else if (ch == 'r' && peekChar(1) == 'o') {
-                tokens.add(new Token(TokenType.MODIFIER_REROLL_ONCE));
-                advance(2);
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_REROLL_ONCE, 2);
+                lexSelector();
             } else if (ch == 'r' && peekChar(1) == 'a') {
-                tokens.add(new Token(TokenType.MODIFIER_REROLL_ADD));
-                advance(2);
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_REROLL_ADD, 2);
+                lexSelector();
             } else if (ch == 'k') {
-                tokens.add(new Token(TokenType.MODIFIER_KEEP));
-                advance();
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_KEEP, 1);
+                lexSelector();
             } else if (ch == 'p') {
-                tokens.add(new Token(TokenType.MODIFIER_DROP));
-                advance();
-                lexSelector(tokens);
+                addToken(TokenType.MODIFIER_DROP, 1);
+                lexSelector();
             } else if (Character.isDigit(ch) || ch == '.') {
-                lexNumber(tokens);
+                lexNumber();
             } else {
-                throw new Exception("Unexpected character '" + ch + "' at position " + pos);
+                throw unexpectedCharacter(pos);
             }
         }
 
         // Add END token to signify end of expression
-        tokens.add(new Token(TokenType.END));
+        tokens.add(TokenType.END, -1, pos, pos);
+    }
 
-        return tokens;
+    private String text() {
+        if (bytes != null)
+            return StandardCharsets.UTF_8.decode(bytes.slice(offset, strlen)).toString();
+        return chars.toString();
     }
 
-    private void lexSelector(List<Token> tokens) {
+    private void lexSelector() {
         char ch = currentChar();
 
         if (ch == 'h') {
-            tokens.add(new Token(TokenType.SELECTOR_HIGHEST));
-            advance();
+            addToken(TokenType.SELECTOR_HIGHEST, 1);
         } else if (ch == 'l') {
-            tokens.add(new Token(TokenType.SELECTOR_LOWEST));
-            advance();
+            addToken(TokenType.SELECTOR_LOWEST, 1);
         } else if (ch == '>') {
-            tokens.add(new Token(TokenType.SELECTOR_GREATER_THAN));
-            advance();
+            addToken(TokenType.SELECTOR_GREATER_THAN, 1);
         } else if (ch == '<') {
-            tokens.add(new Token(TokenType.SELECTOR_LESS_THAN));
-            advance();
+            addToken(TokenType.SELECTOR_LESS_THAN, 1);
         } else {
-            tokens.add(new Token(TokenType.SELECTOR_LITERAL));
+            addToken(TokenType.SELECTOR_LITERAL, 0);
         }
     }
 
-    private void lexNumber(List<Token> tokens) throws Exception {
-        char ch = currentChar();
+    // Digits are accumulated into a long as they are scanned. Integers and short decimals convert
+    // exactly from that; longer decimals fall back to Float.parseFloat on the scanned text.
+    private void lexNumber() throws Exception {
         int start = pos;
         boolean hasIntegerPart = false;
         boolean hasDecimalPoint = false;
         boolean hasFractionalPart = false;
 
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean exact = true;
+
         if (Character.isDigit(currentChar())) {
             hasIntegerPart = true;
-            while (pos < strlen && Character.isDigit(currentChar()))
+            while (pos < strlen && Character.isDigit(currentChar())) {
+                exact &= canAccumulate(mantissa, currentChar());
+                if (exact)
+                    mantissa = mantissa * 10 + (currentChar() - '0');
                 advance();
+            }
         }
 
         if (currentChar() == '.') {
@@ -150,21 +217,75 @@ public class Lexer {
 
         if (Character.isDigit(currentChar())) {
             hasFractionalPart = true;
-            while (pos < strlen && Character.isDigit(currentChar()))
+            while (pos < strlen && Character.isDigit(currentChar())) {
+                exact &= canAccumulate(mantissa, currentChar());
+                if (exact)
+                    mantissa = mantissa * 10 + (currentChar() - '0');
+                fractionDigits++;
                 advance();
+            }
         }
 
         if (currentChar() == '.')
-            throw new Exception("Unexpected character '" + currentChar() + "' at position " + pos);
+            throw unexpectedCharacter(pos);
 
         if (!hasIntegerPart && !hasFractionalPart)
-            throw new Exception("Unexpected character '" + ch + "' at position " + start);
+            throw unexpectedCharacter(start);
+
+        // Integers are kept exact rather than rounded to a float, so they must fit the int an
+        // IntegerLiteralNode holds
+        if (!hasDecimalPoint) {
+            if (!exact || mantissa > Integer.MAX_VALUE)
+                throw new Exception("Number is too large at position " + start);
 
-        String numString = str.substring(start, pos);
+            tokens.add(TokenType.INTEGER_LITERAL, mantissa, start, pos);
+            return;
+        }
 
-        if (hasDecimalPoint)
-            tokens.add(new Token(TokenType.FLOAT_LITERAL, Float.parseFloat(numString)));
+        float value;
+        if (exact && mantissa < MAX_EXACT_FLOAT_MANTISSA && fractionDigits < FLOAT_POWERS_OF_TEN.length)
+            value = mantissa / FLOAT_POWERS_OF_TEN[fractionDigits];
         else
-            tokens.add(new Token(TokenType.INTEGER_LITERAL, Float.parseFloat(numString)));
+            value = Float.parseFloat(text(start, pos));
+
+        tokens.add(TokenType.FLOAT_LITERAL, value, start, pos);
+    }
+
+    // Whether ch can be added to the mantissa without overflow; non-ASCII digits take the slow path
+    private static boolean canAccumulate(long mantissa, char ch) {
+        return ch >= '0' && ch <= '9' && mantissa <= MAX_ACCUMULATED_MANTISSA;
+    }
+
+    private String text(int start, int end) {
+        if (bytes != null) {
+            byte[] slice = new byte[end - start];
+            bytes.get(offset + start, slice);
+            return new String(slice, StandardCharsets.UTF_8);
+        }
+        return chars.subSequence(start, end).toString();
+    }
+
+    private Exception unexpectedCharacter(int at) {
+        String ch;
+        if (at >= strlen) {
+            ch = "\0";
+        } else if (bytes != null && charAt(at) >= 0x80) {
+            // Decode the whole UTF-8 sequence so the message shows the real character
+            int length = Math.min(utf8SequenceLength(charAt(at)), strlen - at);
+            ch = new String(text(at, at + length).codePoints().limit(1).toArray(), 0, 1);
+        } else {
+            ch = String.valueOf(charAt(at));
+        }
+        return new Exception("Unexpected character '" + ch + "' at position " + at);
+    }
+
+    private static int utf8SequenceLength(char leadByte) {
+        if (leadByte >= 0xF0)
+            return 4;
+        if (leadByte >= 0xE0)
+            return 3;
+        if (leadByte >= 0xC0)
+            return 2;
+        return 1;
     }
 }
@@ -43,14 +43,14 @@ public class Token {
     // @formatter:on
 
     public TokenType type;
-    public float numericValue;
+    public double numericValue;
 
     public Token(TokenType type) {
         this.type = type;
         numericValue = -1;
     }
 
-    public Token(TokenType type, float numericValue) {
+    public Token(TokenType type, double numericValue) {
         this.type = type;
         this.numericValue = numericValue;
     }
@@ -125,7 +125,7 @@ public class Token {
             case INTEGER_LITERAL:
                 return Integer.toString((int) numericValue);
             case FLOAT_LITERAL:
-                return Float.toString(numericValue);
+                return Float.toString((float) numericValue);
             default:
                 return typeToString(type);
         }
@@ -0,0 +1,80 @@
+package com.makesvaporware.diceparserjava.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+
+// Reusable struct-of-arrays token list: one entry per token across parallel primitive arrays, so
+// lexing allocates nothing once the buffer has grown to fit. start/end are offsets into the input
+// (chars for a CharSequence, bytes for a ByteBuffer). Values are doubles, which hold both integer
+// literals and float literals exactly.
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 32;
+
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public static TokenBuffer of(List<Token> tokens) {
+        TokenBuffer buffer = new TokenBuffer();
+        for (Token token : tokens)
+            buffer.add(token.type, token.numericValue, 0, 0);
+        return buffer;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(TokenType type, double value, int start, int end) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+
+        types[size] = (byte) type.ordinal();
+        values[size] = value;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public double value(int index) {
+        return values[index];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    public Token get(int index) {
+        return new Token(type(index), values[index]);
+    }
+
+    public List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            tokens.add(get(i));
+        return tokens;
+    }
+}
@@ -0,0 +1,46 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("diceroller.DiceRoll")
+@Label("Roll Dice")
+@Category({ "Dice Roller" })
+@Description("Rolling one dice term and applying its modifiers; only recorded when slower than the threshold")
+@Threshold("20 ms")
+@StackTrace(false)
+public class DiceRollEvent extends jdk.jfr.Event {
+    @Label("Notation")
+    public String notation;
+
+    @Label("Dice")
+    @Description("Dice named by the notation")
+    public int dice;
+
+    @Label("Sides")
+    public int sides;
+
+    @Label("Modifier Groups")
+    public int modifierGroups;
+
+    @Label("Dice Rolled")
+    @Description("Every die rolled, including explosions and rerolls")
+    public long diceRolled;
+
+    @Label("Explosions")
+    public long explosions;
+
+    @Label("Rerolls")
+    public long rerolls;
+
+    @Label("Face Histogram")
+    @Description("Rolled as face counts rather than individual dice")
+    public boolean histogram;
+
+    @Label("Error")
+    public String error;
+}
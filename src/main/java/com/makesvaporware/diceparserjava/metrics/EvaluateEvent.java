@@ -0,0 +1,29 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("diceroller.Evaluate")
+@Label("Evaluate Expression")
+@Category({ "Dice Roller" })
+@Description("Evaluation of a whole expression tree; only recorded when slower than the threshold")
+@Threshold("20 ms")
+@StackTrace(false)
+public class EvaluateEvent extends jdk.jfr.Event {
+    @Label("Expression")
+    public String expression;
+
+    @Label("Total Only")
+    @Description("Evaluated with evaluateValue(), without a display string")
+    public boolean totalOnly;
+
+    @Label("Total")
+    public float total;
+
+    @Label("Error")
+    public String error;
+}
@@ -0,0 +1,128 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.makesvaporware.diceparserjava.json.Json;
+
+// Keeps every counter and timer in memory for the life of the process and exports them on demand
+public class InMemoryMetricsRecorder implements MetricsRecorder {
+    private static final String PROMETHEUS_PREFIX = "diceroller_";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final LongAdder[] counters = new LongAdder[Metric.values().length];
+    private final LatencyHistogram[] timers = new LatencyHistogram[Metric.values().length];
+
+    public InMemoryMetricsRecorder() {
+        for (Metric metric : Metric.values()) {
+            if (metric.getType() == Metric.Type.COUNTER)
+                counters[metric.ordinal()] = new LongAdder();
+            else
+                timers[metric.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void increment(Metric counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    @Override
+    public void recordNanos(Metric timer, long nanos) {
+        timers[timer.ordinal()].record(nanos);
+    }
+
+    public long getCount(Metric counter) {
+        if (counter.getType() != Metric.Type.COUNTER)
+            throw new IllegalArgumentException(counter + " is not a counter");
+        return counters[counter.ordinal()].sum();
+    }
+
+    public LatencyHistogram getTimer(Metric timer) {
+        if (timer.getType() != Metric.Type.TIMER)
+            throw new IllegalArgumentException(timer + " is not a timer");
+        return timers[timer.ordinal()];
+    }
+
+    public void reset() {
+        for (Metric metric : Metric.values()) {
+            if (metric.getType() == Metric.Type.COUNTER)
+                counters[metric.ordinal()].reset();
+            else
+                timers[metric.ordinal()].reset();
+        }
+    }
+
+    // === EXPORT ===
+
+    // {"counters": {"dice_rolled": 12, ...}, "timers": {"lex": {"count": 3, "sum_nanos": ..., "p50_nanos": ...}, ...}}
+    public void writeJson(Appendable out) throws IOException {
+        Map<String, Object> counterValues = new LinkedHashMap<>();
+        Map<String, Object> timerValues = new LinkedHashMap<>();
+
+        for (Metric metric : Metric.values()) {
+            if (metric.getType() == Metric.Type.COUNTER) {
+                counterValues.put(metric.getName(), getCount(metric));
+                continue;
+            }
+
+            LatencyHistogram histogram = getTimer(metric);
+            Map<String, Object> timer = new LinkedHashMap<>();
+            timer.put("count", histogram.getCount());
+            timer.put("sum_nanos", histogram.getTotalNanos());
+            timer.put("max_nanos", histogram.getMaxNanos());
+            for (double quantile : QUANTILES)
+                timer.put("p" + quantileLabel(quantile) + "_nanos", histogram.getValueAtPercentile(quantile * 100));
+            timerValues.put(metric.getName(), timer);
+        }
+
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("counters", counterValues);
+        root.put("timers", timerValues);
+        Json.write(root, out);
+    }
+
+    // Prometheus text exposition format; counters get a _total suffix and timers are summaries in seconds
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Metric metric : Metric.values()) {
+            if (metric.getType() == Metric.Type.COUNTER) {
+                String name = PROMETHEUS_PREFIX + metric.getName() + "_total";
+                writeHeader(out, name, metric.getDescription(), "counter");
+                out.append(name).append(' ').append(String.valueOf(getCount(metric))).append('\n');
+                continue;
+            }
+
+            String name = PROMETHEUS_PREFIX + metric.getName() + "_seconds";
+            LatencyHistogram histogram = getTimer(metric);
+            writeHeader(out, name, metric.getDescription(), "summary");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(String.valueOf(quantile)).append("\"} ")
+                        .append(String.valueOf(seconds(histogram.getValueAtPercentile(quantile * 100)))).append('\n');
+            }
+            out.append(name).append("_sum ").append(String.valueOf(seconds(histogram.getTotalNanos()))).append('\n');
+            out.append(name).append("_count ").append(String.valueOf(histogram.getCount())).append('\n');
+        }
+    }
+
+    private static void writeHeader(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    // 0.5 -> "50", 0.999 -> "999"
+    private static String quantileLabel(double quantile) {
+        String digits = String.valueOf(quantile).substring(2);
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+}
@@ -0,0 +1,28 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("diceroller.Lex")
+@Label("Lex Expression")
+@Category({ "Dice Roller" })
+@Description("Lexing of one expression; only recorded when slower than the threshold")
+@Threshold("10 ms")
+@StackTrace(false)
+public class LexEvent extends jdk.jfr.Event {
+    @Label("Expression")
+    public String expression;
+
+    @Label("Length")
+    public int length;
+
+    @Label("Tokens")
+    public int tokens;
+
+    @Label("Error")
+    public String error;
+}
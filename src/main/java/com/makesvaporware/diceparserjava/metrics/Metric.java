@@ -0,0 +1,49 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+// Every instrumented point. Metrics are fixed up front so recording is an array index, not a map lookup.
+public enum Metric {
+    LEX(Type.TIMER, "lex", "Time spent lexing expressions"),
+    PARSE(Type.TIMER, "parse", "Time spent parsing token streams"),
+    EVALUATE(Type.TIMER, "evaluate", "Time spent in Evaluator.evaluate()"),
+    EVALUATE_VALUE(Type.TIMER, "evaluate_value", "Time spent in Evaluator.evaluateValue()"),
+    DISPLAY(Type.TIMER, "display", "Time spent formatting dice breakdowns"),
+
+    MODIFIER_MINIMUM(Type.TIMER, "modifier_minimum", "Time spent applying mi modifiers"),
+    MODIFIER_MAXIMUM(Type.TIMER, "modifier_maximum", "Time spent applying ma modifiers"),
+    MODIFIER_EXPLODE(Type.TIMER, "modifier_explode", "Time spent applying e modifiers"),
+    MODIFIER_REROLL(Type.TIMER, "modifier_reroll", "Time spent applying rr modifiers"),
+    MODIFIER_REROLL_ONCE(Type.TIMER, "modifier_reroll_once", "Time spent applying ro modifiers"),
+    MODIFIER_REROLL_ADD(Type.TIMER, "modifier_reroll_add", "Time spent applying ra modifiers"),
+    MODIFIER_KEEP(Type.TIMER, "modifier_keep", "Time spent applying k modifier groups"),
+    MODIFIER_DROP(Type.TIMER, "modifier_drop", "Time spent applying p modifier groups"),
+
+    DICE_ROLLED(Type.COUNTER, "dice_rolled", "Dice rolled, including explosions and rerolls"),
+    DICE_LIMIT_REJECTIONS(Type.COUNTER, "dice_limit_rejections", "Evaluations stopped for rolling too many dice");
+
+    public enum Type {
+        COUNTER,
+        TIMER
+    }
+
+    private final Type type;
+    private final String name;
+    private final String description;
+
+    Metric(Type type, String name, String description) {
+        this.type = type;
+        this.name = name;
+        this.description = description;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,38 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+// Process-wide recorder used by the lexer, parser and evaluator. Recording is off by default; with the
+// no-op recorder installed a timed section costs one volatile read and no clock reads.
+//
+//     long start = Metrics.start();
+//     ...
+//     Metrics.stop(Metric.PARSE, start);
+public final class Metrics {
+    private static volatile MetricsRecorder recorder = NoopMetricsRecorder.INSTANCE;
+
+    private Metrics() {
+    }
+
+    public static MetricsRecorder get() {
+        return recorder;
+    }
+
+    public static void set(MetricsRecorder recorder) {
+        Metrics.recorder = recorder == null ? NoopMetricsRecorder.INSTANCE : recorder;
+    }
+
+    // Returns a start timestamp for stop(), or 0 when recording is off
+    public static long start() {
+        return recorder.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public static void stop(Metric timer, long start) {
+        if (start != 0)
+            recorder.recordNanos(timer, System.nanoTime() - start);
+    }
+
+    public static void increment(Metric counter, long amount) {
+        MetricsRecorder current = recorder;
+        if (current.isEnabled())
+            current.increment(counter, amount);
+    }
+}
@@ -0,0 +1,11 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+// Destination for instrumentation; install one with Metrics.set()
+public interface MetricsRecorder {
+    // Lets instrumented code skip reading the clock entirely when nothing is recorded
+    boolean isEnabled();
+
+    void increment(Metric counter, long amount);
+
+    void recordNanos(Metric timer, long nanos);
+}
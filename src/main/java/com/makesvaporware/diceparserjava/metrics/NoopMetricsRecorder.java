@@ -0,0 +1,22 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+// Default recorder: drops everything
+public class NoopMetricsRecorder implements MetricsRecorder {
+    public static final NoopMetricsRecorder INSTANCE = new NoopMetricsRecorder();
+
+    private NoopMetricsRecorder() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void increment(Metric counter, long amount) {
+    }
+
+    @Override
+    public void recordNanos(Metric timer, long nanos) {
+    }
+}
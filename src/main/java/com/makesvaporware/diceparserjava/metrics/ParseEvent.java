@@ -0,0 +1,26 @@
+package com.makesvaporware.diceparserjava.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("diceroller.Parse")
+@Label("Parse Expression")
+@Category({ "Dice Roller" })
+@Description("Parsing of one token stream; only recorded when slower than the threshold")
+@Threshold("10 ms")
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+    @Label("Expression")
+    @Description("The parsed tree written back out as notation")
+    public String expression;
+
+    @Label("Tokens")
+    public int tokens;
+
+    @Label("Error")
+    public String error;
+}
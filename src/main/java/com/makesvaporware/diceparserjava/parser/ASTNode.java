@@ -1,7 +1,40 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 
 public abstract class ASTNode {
-    abstract public EvaluationResult evaluate() throws Exception;
+    // Bounds up to this leave a factor of two of headroom for rounding in the double arithmetic
+    // that computes them
+    private static final double MAX_LONG_BOUND = 0x1p62;
+
+    public EvaluationResult evaluate() throws Exception {
+        return evaluate(EvaluationContext.defaultContext());
+    }
+
+    abstract public EvaluationResult evaluate(EvaluationContext context) throws Exception;
+
+    // Same total as evaluate(), without building any display strings
+    public float evaluateValue() throws Exception {
+        return evaluateValue(EvaluationContext.defaultContext());
+    }
+
+    abstract public float evaluateValue(EvaluationContext context) throws Exception;
+
+    // === WHOLE-NUMBER PATH ===
+
+    // Largest magnitude the total can reach if the subtree is whole-number arithmetic (integer
+    // literals, dice, +, - and *), or infinity if it involves float literals or division
+    abstract public double integerBound();
+
+    // Whether the total can be computed by evaluateLong(): a whole number that can't overflow a long
+    public boolean isIntegral() {
+        return integerBound() <= MAX_LONG_BOUND;
+    }
+
+    // The exact total of an integral subtree. evaluateValue() of an integral subtree is this converted
+    // to a float once at the end, rather than float arithmetic at every step.
+    public long evaluateLong(EvaluationContext context) throws Exception {
+        throw new IllegalStateException("Not a whole-number expression: " + getClass().getSimpleName());
+    }
 }
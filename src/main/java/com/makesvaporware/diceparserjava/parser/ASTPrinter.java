@@ -0,0 +1,95 @@
+package com.makesvaporware.diceparserjava.parser;
+
+import com.makesvaporware.diceparserjava.lexer.Token;
+
+// Indented one-node-per-line dump of a tree, for debugging the parser and optimizer
+public class ASTPrinter {
+    private static final String INDENT = "  ";
+
+    private ASTPrinter() {
+    }
+
+    public static String print(ASTNode root) {
+        StringBuilder sb = new StringBuilder();
+        print(sb, root, 0);
+        return sb.toString();
+    }
+
+    // One-line notation for a tree, e.g. "4d6kh3 + (1d8 + 2) * 2"
+    public static String notation(ASTNode root) {
+        StringBuilder sb = new StringBuilder();
+        appendNotation(sb, root);
+        return sb.toString();
+    }
+
+    private static void appendNotation(StringBuilder sb, ASTNode node) {
+        if (node instanceof IntegerLiteralNode) {
+            sb.append(((IntegerLiteralNode) node).getValue());
+        } else if (node instanceof FloatLiteralNode) {
+            sb.append(((FloatLiteralNode) node).getValue());
+        } else if (node instanceof ParenthesizedExprNode) {
+            sb.append('(');
+            appendNotation(sb, ((ParenthesizedExprNode) node).getInner());
+            sb.append(')');
+        } else if (node instanceof UnaryExprNode) {
+            UnaryExprNode unary = (UnaryExprNode) node;
+            sb.append(Token.typeToString(unary.getOperator()));
+            appendNotation(sb, unary.getChild());
+        } else if (node instanceof BinaryExprNode) {
+            BinaryExprNode binary = (BinaryExprNode) node;
+            appendNotation(sb, binary.getLeft());
+            sb.append(' ').append(Token.typeToString(binary.getOperator())).append(' ');
+            appendNotation(sb, binary.getRight());
+        } else if (node instanceof DiceExprNode) {
+            DiceExprNode dice = (DiceExprNode) node;
+            appendNotation(sb, dice.getLeft());
+            sb.append('d');
+            appendNotation(sb, dice.getRight());
+
+            for (Modifier modifier : dice.getModifiers()) {
+                sb.append(Token.typeToString(modifier.type)).append(Token.typeToString(modifier.selector));
+                appendNotation(sb, modifier.factor);
+            }
+        } else {
+            sb.append(node.getClass().getSimpleName());
+        }
+    }
+
+    private static void print(StringBuilder sb, ASTNode node, int depth) {
+        if (sb.length() > 0)
+            sb.append('\n');
+        sb.append(INDENT.repeat(depth));
+
+        if (node instanceof IntegerLiteralNode) {
+            sb.append("Integer ").append(((IntegerLiteralNode) node).getValue());
+        } else if (node instanceof FloatLiteralNode) {
+            sb.append("Float ").append(((FloatLiteralNode) node).getValue());
+        } else if (node instanceof ParenthesizedExprNode) {
+            sb.append("Parenthesized");
+            print(sb, ((ParenthesizedExprNode) node).getInner(), depth + 1);
+        } else if (node instanceof UnaryExprNode) {
+            UnaryExprNode unary = (UnaryExprNode) node;
+            sb.append("Unary ").append(Token.typeToString(unary.getOperator()));
+            print(sb, unary.getChild(), depth + 1);
+        } else if (node instanceof BinaryExprNode) {
+            BinaryExprNode binary = (BinaryExprNode) node;
+            sb.append("Binary ").append(Token.typeToString(binary.getOperator()));
+            print(sb, binary.getLeft(), depth + 1);
+            print(sb, binary.getRight(), depth + 1);
+        } else if (node instanceof DiceExprNode) {
+            DiceExprNode dice = (DiceExprNode) node;
+            sb.append("Dice");
+            print(sb, dice.getLeft(), depth + 1);
+            print(sb, dice.getRight(), depth + 1);
+
+            for (Modifier modifier : dice.getModifiers()) {
+                sb.append('\n').append(INDENT.repeat(depth + 1)).append("Modifier ")
+                        .append(Token.typeToString(modifier.type))
+                        .append(Token.typeToString(modifier.selector));
+                print(sb, modifier.factor, depth + 2);
+            }
+        } else {
+            sb.append(node.getClass().getSimpleName());
+        }
+    }
+}
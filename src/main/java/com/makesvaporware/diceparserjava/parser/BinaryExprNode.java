@@ -1,45 +1,131 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 import com.makesvaporware.diceparserjava.lexer.Token;
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
 
 public class BinaryExprNode extends ASTNode {
-    private ASTNode left;
-    private ASTNode right;
-    private TokenType operator;
+    private final ASTNode left;
+    private final ASTNode right;
+    private final TokenType operator;
+    private final double integerBound;
+    private final boolean integral;
 
     public BinaryExprNode(ASTNode left, ASTNode right, TokenType operator) {
         this.left = left;
         this.right = right;
         this.operator = operator;
+        this.integerBound = computeIntegerBound();
+        this.integral = isIntegral();
+    }
+
+    public ASTNode getLeft() {
+        return left;
+    }
+
+    public ASTNode getRight() {
+        return right;
+    }
+
+    public TokenType getOperator() {
+        return operator;
     }
 
     @Override
-    public EvaluationResult evaluate() throws Exception {
-        EvaluationResult leftResult = left.evaluate();
-        EvaluationResult rightResult = right.evaluate();
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
+        EvaluationResult leftResult = left.evaluate(context);
+        EvaluationResult rightResult = right.evaluate(context);
+
+        if (integral)
+            return EvaluationResult.binary(applyExact(leftResult.getExactValue(), rightResult.getExactValue()),
+                    Token.typeToString(operator), leftResult, rightResult);
 
         switch (operator) {
             case PLUS:
-                return new EvaluationResult(leftResult.value + rightResult.value,
-                        String.format("%s + %s",
-                                leftResult.displayString, rightResult.displayString));
+                return EvaluationResult.binary(leftResult.getValue() + rightResult.getValue(), "+",
+                        leftResult, rightResult);
             case MINUS:
-                return new EvaluationResult(leftResult.value - rightResult.value,
-                        String.format("%s - %s",
-                                leftResult.displayString, rightResult.displayString));
+                return EvaluationResult.binary(leftResult.getValue() - rightResult.getValue(), "-",
+                        leftResult, rightResult);
             case MULTIPLY:
-                return new EvaluationResult(leftResult.value
-                        * rightResult.value,
-                        String.format("%s * %s",
-                                leftResult.displayString, rightResult.displayString));
+                return EvaluationResult.binary(leftResult.getValue() * rightResult.getValue(), "*",
+                        leftResult, rightResult);
             case DIVIDE:
-                if (rightResult.value == 0)
+                if (rightResult.getValue() == 0)
                     throw new Exception("Division by zero");
-                return new EvaluationResult(leftResult.value / rightResult.value,
-                        String.format("%s / %s",
-                                leftResult.displayString, rightResult.displayString));
+                return EvaluationResult.binary(leftResult.getValue() / rightResult.getValue(), "/",
+                        leftResult, rightResult);
+            default:
+                throw new Exception("Unknown binary operator: " + Token.typeToString(operator));
+        }
+    }
+
+    @Override
+    public float evaluateValue(EvaluationContext context) throws Exception {
+        if (integral)
+            return (float) evaluateLong(context);
+
+        float leftValue = left.evaluateValue(context);
+        float rightValue = right.evaluateValue(context);
+
+        switch (operator) {
+            case PLUS:
+                return leftValue + rightValue;
+            case MINUS:
+                return leftValue - rightValue;
+            case MULTIPLY:
+                return leftValue * rightValue;
+            case DIVIDE:
+                if (rightValue == 0)
+                    throw new Exception("Division by zero");
+                return leftValue / rightValue;
+            default:
+                throw new Exception("Unknown binary operator: " + Token.typeToString(operator));
+        }
+    }
+
+    // === WHOLE-NUMBER PATH ===
+
+    // Computed once, since chains of + and - would otherwise walk their whole left side at every level
+    private double computeIntegerBound() {
+        // Checked first, since a bound too big for a long times a bound of zero would look integral
+        if (!left.isIntegral() || !right.isIntegral())
+            return Double.POSITIVE_INFINITY;
+
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+                return left.integerBound() + right.integerBound();
+            case MULTIPLY:
+                return left.integerBound() * right.integerBound();
+            default:
+                // Division is promoted to float, since its result needn't be whole
+                return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    @Override
+    public double integerBound() {
+        return integerBound;
+    }
+
+    @Override
+    public long evaluateLong(EvaluationContext context) throws Exception {
+        long leftValue = left.evaluateLong(context);
+        long rightValue = right.evaluateLong(context);
+        return applyExact(leftValue, rightValue);
+    }
+
+    // integerBound() already rules out overflow; the exact operations only back it up
+    private long applyExact(long leftValue, long rightValue) throws Exception {
+        switch (operator) {
+            case PLUS:
+                return Math.addExact(leftValue, rightValue);
+            case MINUS:
+                return Math.subtractExact(leftValue, rightValue);
+            case MULTIPLY:
+                return Math.multiplyExact(leftValue, rightValue);
             default:
                 throw new Exception("Unknown binary operator: " + Token.typeToString(operator));
         }
@@ -1,122 +1,272 @@
 package com.makesvaporware.diceparserjava.parser;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 import com.makesvaporware.diceparserjava.lexer.Token;
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+import com.makesvaporware.diceparserjava.metrics.DiceRollEvent;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+import com.makesvaporware.diceparserjava.random.RandomSource;
 
 public class DiceExprNode extends ASTNode {
-    private static final int MAX_DICE_ROLLS = 99999;
+    // Evaluation fails with "Too many dice rolled." once explode/reroll modifiers grow a pool past this
+    public static final int MAX_DICE_ROLLS = 99999;
     private static final int UNSET_VALUE = -1;
 
-    private ASTNode left;
-    private ASTNode right;
-    private TokenType operator;
-    private List<Modifier> modifiers = new ArrayList<>();
+    // Total-only pools with at least this many dice per face value are rolled as a face histogram
+    private static final int HISTOGRAM_DICE_PER_FACE = 32;
+    private static final int MAX_HISTOGRAM_RANGE = 4096;
 
-    public DiceExprNode(ASTNode left, ASTNode right, TokenType operator) {
+    // Explode/reroll chains check for cancellation once per this many new dice (a power of two)
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private final ASTNode left;
+    private final ASTNode right;
+    private final TokenType operator;
+    private final List<Modifier> modifiers;
+    private final double integerBound;
+    // Lazily built once per node. Threads racing to build them each build an equal value, so they
+    // can be published without locking.
+    private String notation;
+    private List<ModifierGroup> modifierGroups;
+
+    public DiceExprNode(ASTNode left, ASTNode right, TokenType operator, List<Modifier> modifiers) {
         this.left = left;
         this.right = right;
         this.operator = operator;
+        this.modifiers = List.copyOf(modifiers);
+        this.integerBound = computeIntegerBound();
     }
 
-    public void addModifier(Modifier modifier) {
-        this.modifiers.add(modifier);
+    public ASTNode getLeft() {
+        return left;
     }
 
-    // Helpers
-    class DieRoll {
-        int value = 0;
-        boolean kept = true;
-        StringBuilder transformations = new StringBuilder();
+    public ASTNode getRight() {
+        return right;
+    }
 
-        public DieRoll(int numSides) {
-            this.originalValue(ThreadLocalRandom.current().nextInt(1, numSides + 1));
-        }
+    public TokenType getOperator() {
+        return operator;
+    }
 
-        public DieRoll originalValue(int value) {
-            this.value = value;
-            this.transformations.append(value);
-            return this;
+    public List<Modifier> getModifiers() {
+        return modifiers;
+    }
+
+    public record ValidatedModifier(TokenType type, TokenType selector, int value) {
+    }
+
+    public static class ModifierGroup {
+        public final TokenType type;
+        public final List<ValidatedModifier> modifiers;
+
+        ModifierGroup(TokenType type) {
+            this(type, new ArrayList<>());
         }
 
-        public DieRoll transformValue(String transformation, int value) {
-            this.value = value;
-            transformations.append(transformation + value);
-            return this;
+        private ModifierGroup(TokenType type, List<ValidatedModifier> modifiers) {
+            this.type = type;
+            this.modifiers = modifiers;
         }
 
-        public DieRoll transform(String transformation) {
-            transformations.append(transformation);
+        ModifierGroup addToGroup(ValidatedModifier modifier) {
+            modifiers.add(modifier);
             return this;
         }
 
-        public void bold() {
-            transformations.insert(0, "**");
-            transformations.append("**");
+        private ModifierGroup freeze() {
+            return new ModifierGroup(type, List.copyOf(modifiers));
         }
+    }
 
-        public void strikethrough() {
-            transformations.insert(0, "~~");
-            transformations.append("~~");
+    @Override
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
+        int numDice = getNumDice();
+        int numSides = getNumSides();
+        List<ModifierGroup> modifierGroups = getModifierGroups();
+
+        // Errors wait for the event to be committed; see Evaluator.evaluate() for why this isn't a finally block
+        DiceRollEvent event = new DiceRollEvent();
+        event.begin();
+
+        DicePool pool = null;
+        Exception error = null;
+        try {
+            pool = rollPool(context, numDice, numSides, modifierGroups, true);
+        } catch (Exception e) {
+            error = e;
         }
 
-        public void discard() {
-            kept = false;
-        }
+        event.end();
+        if (event.shouldCommit())
+            commit(event, context, modifierGroups.size(), false, error);
+        if (error != null)
+            throw error;
+
+        return EvaluationResult.dice(pool.keptTotal(), notation(), pool.toRollLog());
+    }
+
+    @Override
+    public float evaluateValue(EvaluationContext context) throws Exception {
+        return (float) evaluateLong(context);
+    }
 
-        public void keep() {
-            kept = true;
+    @Override
+    public long evaluateLong(EvaluationContext context) throws Exception {
+        int numDice = getNumDice();
+        int numSides = getNumSides();
+        List<ModifierGroup> modifierGroups = getModifierGroups();
+
+        // Without a display string, per-die order no longer matters and huge pools only need face counts
+        boolean histogram = useHistogram(numDice, numSides, modifierGroups);
+
+        DiceRollEvent event = new DiceRollEvent();
+        event.begin();
+
+        long total = 0;
+        Exception error = null;
+        try {
+            if (histogram)
+                total = rollHistogram(context, numDice, numSides, modifierGroups).keptTotal();
+            else
+                total = rollPool(context, numDice, numSides, modifierGroups, false).keptTotal();
+        } catch (Exception e) {
+            error = e;
         }
+
+        event.end();
+        if (event.shouldCommit())
+            commit(event, context, modifierGroups.size(), histogram, error);
+        if (error != null)
+            throw error;
+
+        return total;
     }
 
-    record ValidatedModifier(TokenType type, TokenType selector, int value) {
+    @Override
+    public double integerBound() {
+        return integerBound;
     }
 
-    class ModifierGroup {
-        TokenType type;
-        List<ValidatedModifier> modifiers = new ArrayList<>();
+    // Every kept die is at most the larger of the sides and any minimum/maximum value, and explode or
+    // reroll-and-add can only grow the pool up to MAX_DICE_ROLLS. Invalid terms, which fail when
+    // rolled, are left to the float path.
+    private double computeIntegerBound() {
+        if (!(left instanceof IntegerLiteralNode) || !(right instanceof IntegerLiteralNode))
+            return Double.POSITIVE_INFINITY;
 
-        public ModifierGroup(TokenType type) {
-            this.type = type;
+        double numDice = ((IntegerLiteralNode) left).getValue();
+        double maxFace = Math.abs((double) ((IntegerLiteralNode) right).getValue());
+
+        for (Modifier modifier : modifiers) {
+            if (!(modifier.factor instanceof IntegerLiteralNode))
+                return Double.POSITIVE_INFINITY;
+
+            switch (modifier.type) {
+                case MODIFIER_MINIMUM:
+                case MODIFIER_MAXIMUM:
+                    maxFace = Math.max(maxFace, Math.abs((double) ((IntegerLiteralNode) modifier.factor).getValue()));
+                    break;
+                case MODIFIER_EXPLODE:
+                case MODIFIER_REROLL_ADD:
+                    numDice = Math.max(numDice, MAX_DICE_ROLLS);
+                    break;
+                default:
+                    break;
+            }
         }
 
-        public ModifierGroup addToGroup(ValidatedModifier modifier) {
-            modifiers.add(modifier);
-            return this;
+        return numDice * maxFace;
+    }
+
+    // Reads the roll counts back from the context's pool or histogram, which still hold the last roll
+    private void commit(DiceRollEvent event, EvaluationContext context, int modifierGroups, boolean histogram,
+            Exception error) {
+        event.notation = notation();
+        event.dice = ((IntegerLiteralNode) left).getValue();
+        event.sides = ((IntegerLiteralNode) right).getValue();
+        event.modifierGroups = modifierGroups;
+        event.histogram = histogram;
+        event.error = error == null ? null : error.getMessage();
+
+        if (histogram) {
+            DiceHistogram rolled = context.getBuffers().histogram();
+            event.diceRolled = rolled.numDice();
+            event.explosions = rolled.explosions;
+            event.rerolls = rolled.rerolls;
+        } else {
+            DicePool rolled = context.getBuffers().pool();
+            event.diceRolled = rolled.numDice();
+            event.explosions = rolled.explosions;
+            event.rerolls = rolled.rerolls;
+        }
+
+        event.commit();
+    }
+
+    // Built once per node and shared by every result rolled from it
+    private String notation() {
+        String cached = notation;
+        if (cached == null) {
+            StringBuilder sb = new StringBuilder();
+            appendNotation(sb);
+            cached = sb.toString();
+            notation = cached;
         }
+        return cached;
     }
 
-    @Override
-    public EvaluationResult evaluate() throws Exception {
-        // Validate dice parameters
+    private void appendNotation(StringBuilder sb) {
+        sb.append(((IntegerLiteralNode) left).getValue())
+                .append("d")
+                .append(((IntegerLiteralNode) right).getValue());
+
+        for (Modifier modifier : modifiers) {
+            sb.append(Token.typeToString(modifier.type))
+                    .append(Token.typeToString(modifier.selector))
+                    .append(((IntegerLiteralNode) modifier.factor).getValue());
+        }
+    }
+
+    // === VALIDATION ===
+
+    public int getNumDice() throws Exception {
         if (!(left instanceof IntegerLiteralNode))
             throw new Exception("Invalid dice expression: Number of dice must be a literal integer.");
 
+        return ((IntegerLiteralNode) left).getValue();
+    }
+
+    public int getNumSides() throws Exception {
         if (!(right instanceof IntegerLiteralNode))
             throw new Exception("Invalid dice expression: Number of sides must be a literal integer.");
 
-        EvaluationResult leftResult = left.evaluate();
-        EvaluationResult rightResult = right.evaluate();
-
-        int numDice = (int) leftResult.value;
-        int numSides = (int) rightResult.value;
+        int numSides = ((IntegerLiteralNode) right).getValue();
 
         if (numSides == 0)
             throw new Exception(
                     "Invalid dice expression: Cannot roll a 0-sided die.");
 
-        // Start building DiceExpr display string
-        StringBuilder display = new StringBuilder();
-        display.append(numDice).append("d").append(numSides);
+        return numSides;
+    }
+
+    // Validated once and shared by every evaluation. Invalid modifiers aren't cached, so they fail
+    // each time the term is rolled.
+    public List<ModifierGroup> getModifierGroups() throws Exception {
+        List<ModifierGroup> cached = modifierGroups;
+        if (cached == null) {
+            cached = validateModifiers();
+            modifierGroups = cached;
+        }
+        return cached;
+    }
 
+    private List<ModifierGroup> validateModifiers() throws Exception {
         // Validate node modifiers before evaluating
         // Group together consecutive `k` and `p` to be evaluated as a union set
         List<ModifierGroup> modifierGroups = new ArrayList<>();
@@ -125,8 +275,7 @@ public class DiceExprNode extends ASTNode {
             if (!(modifier.factor instanceof IntegerLiteralNode))
                 throw new Exception("Invalid modifier: Modifier values must be a literal integer.");
 
-            EvaluationResult modResult = modifier.factor.evaluate();
-            int intModValue = (int) modResult.value;
+            int intModValue = ((IntegerLiteralNode) modifier.factor).getValue();
 
             ValidatedModifier validatedModifier = new ValidatedModifier(modifier.type, modifier.selector, intModValue);
 
@@ -156,30 +305,42 @@ public class DiceExprNode extends ASTNode {
                 default:
                     throw new Exception("Unknown modifier operator: " + Token.typeToString(operator));
             }
-
-            // Continue building DiceExpr display string here
-            display.append(Token.typeToString(modifier.type))
-                    .append(Token.typeToString(modifier.selector))
-                    .append(intModValue);
         }
 
+        List<ModifierGroup> frozen = new ArrayList<>(modifierGroups.size());
+        for (ModifierGroup group : modifierGroups)
+            frozen.add(group.freeze());
+        return List.copyOf(frozen);
+    }
+
+    // === ROLLING ===
+
+    // Rolls the base dice and applies every modifier group. The returned pool is only valid until
+    // the next roll with the same context.
+    private DicePool rollPool(EvaluationContext context, int numDice, int numSides,
+            List<ModifierGroup> modifierGroups, boolean recordHistory) throws Exception {
+        RandomSource random = context.getRandom();
+        context.checkCancelled();
+
         // Roll all base dice first
-        List<DieRoll> rolls = new ArrayList<>();
-        for (int i = 0; i < numDice; i++) {
-            DieRoll roll = new DieRoll(numSides);
-            rolls.add(roll);
-        }
+        DicePool pool = context.getBuffers().pool();
+        pool.reset(numSides, recordHistory);
+        pool.rollBase(random, numDice);
 
         // Evaluate modifier transformations left-to-right
         for (ModifierGroup group : modifierGroups) {
+            context.checkCancelled();
+            long groupStart = Metrics.start();
+
             switch (group.type) {
                 case MODIFIER_MINIMUM: {
                     ValidatedModifier modifier = group.modifiers.get(0);
                     if (modifier.selector != TokenType.SELECTOR_LITERAL)
                         throw new Exception("MINIMUM modifier can only use literal selector.");
-                    for (DieRoll roll : rolls) {
-                        if (roll.kept && roll.value < modifier.value)
-                            roll.transformValue(" -> ", modifier.value);
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        if (pool.isKept(id) && pool.value(id) < modifier.value)
+                            pool.transformValue(id, modifier.value);
                     }
                 }
                     break;
@@ -187,279 +348,538 @@ public class DiceExprNode extends ASTNode {
                     ValidatedModifier modifier = group.modifiers.get(0);
                     if (modifier.selector != TokenType.SELECTOR_LITERAL)
                         throw new Exception("MAXIMUM modifier can only use literal selector.");
-                    for (DieRoll roll : rolls) {
-                        if (roll.kept && roll.value > modifier.value)
-                            roll.transformValue(" -> ", modifier.value);
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        if (pool.isKept(id) && pool.value(id) > modifier.value)
+                            pool.transformValue(id, modifier.value);
                     }
                 }
                     break;
                 case MODIFIER_EXPLODE: {
                     ValidatedModifier modifier = group.modifiers.get(0);
-                    List<DieRoll> newRolls = new ArrayList<>();
                     boolean explodeOnce = modifier.selector == TokenType.SELECTOR_HIGHEST
                             || modifier.selector == TokenType.SELECTOR_LOWEST;
-                    List<DieRoll> oldSortedKeptRolls = explodeOnce ? sortKeptRolls(rolls) : null;
+                    int keptCount = explodeOnce ? pool.rankKept() : 0;
+
+                    pool.beginRebuild();
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        pool.appendRebuilt(id);
+                        if (pool.isKept(id)) {
+                            while (shouldExplode(modifier, pool, keptCount, id)) {
+                                pool.markExploded(id);
 
-                    for (DieRoll roll : rolls) {
-                        newRolls.add(roll);
-                        if (roll.kept) {
-                            while (shouldExplode(modifier, oldSortedKeptRolls, roll)) {
-                                roll.transform("!");
+                                if (pool.rebuiltSize() > MAX_DICE_ROLLS)
+                                    throw tooManyDiceRolled();
 
-                                if (newRolls.size() > MAX_DICE_ROLLS)
-                                    throw new Exception("Too many dice rolled.");
+                                id = pool.roll(random);
+                                pool.explosions++;
+                                pool.appendRebuilt(id);
 
-                                roll = new DieRoll(numSides);
-                                newRolls.add(roll);
+                                if ((pool.explosions & (CANCELLATION_CHECK_INTERVAL - 1)) == 0)
+                                    context.checkCancelled();
 
                                 if (explodeOnce)
                                     break;
                             }
                         }
                     }
-                    rolls = newRolls;
+                    pool.endRebuild();
                 }
                     break;
                 case MODIFIER_REROLL: {
                     ValidatedModifier modifier = group.modifiers.get(0);
-                    List<DieRoll> newRolls = new ArrayList<>();
 
-                    for (DieRoll roll : rolls) {
-                        newRolls.add(roll);
-                        if (roll.kept) {
-                            while (shouldReroll(modifier, null, roll)) {
-                                roll.discard();
+                    pool.beginRebuild();
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        pool.appendRebuilt(id);
+                        if (pool.isKept(id)) {
+                            while (shouldReroll(modifier, pool, 0, id)) {
+                                pool.discard(id);
 
-                                if (newRolls.size() > MAX_DICE_ROLLS)
-                                    throw new Exception("Too many dice rolled.");
+                                if (pool.rebuiltSize() > MAX_DICE_ROLLS)
+                                    throw tooManyDiceRolled();
 
-                                roll = new DieRoll(numSides);
-                                newRolls.add(roll);
+                                id = pool.roll(random);
+                                pool.rerolls++;
+                                pool.appendRebuilt(id);
+
+                                if ((pool.rerolls & (CANCELLATION_CHECK_INTERVAL - 1)) == 0)
+                                    context.checkCancelled();
                             }
                         }
                     }
-                    rolls = newRolls;
+                    pool.endRebuild();
                 }
                     break;
                 case MODIFIER_REROLL_ONCE: {
                     ValidatedModifier modifier = group.modifiers.get(0);
-                    List<DieRoll> newRolls = new ArrayList<>();
                     boolean isSelectorHighestLowest = modifier.selector == TokenType.SELECTOR_HIGHEST
                             || modifier.selector == TokenType.SELECTOR_LOWEST;
-                    List<DieRoll> oldSortedKeptRolls = isSelectorHighestLowest ? sortKeptRolls(rolls) : null;
+                    int keptCount = isSelectorHighestLowest ? pool.rankKept() : 0;
 
-                    for (DieRoll roll : rolls) {
-                        newRolls.add(roll);
-                        if (roll.kept) {
-                            if (shouldReroll(modifier, oldSortedKeptRolls, roll)) {
-                                roll.discard();
+                    pool.beginRebuild();
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        pool.appendRebuilt(id);
+                        if (pool.isKept(id)) {
+                            if (shouldReroll(modifier, pool, keptCount, id)) {
+                                pool.discard(id);
 
-                                if (newRolls.size() > MAX_DICE_ROLLS)
-                                    throw new Exception("Too many dice rolled.");
+                                if (pool.rebuiltSize() > MAX_DICE_ROLLS)
+                                    throw tooManyDiceRolled();
 
-                                roll = new DieRoll(numSides);
-                                newRolls.add(roll);
+                                pool.appendRebuilt(pool.roll(random));
+                                pool.rerolls++;
                             }
                         }
                     }
-                    rolls = newRolls;
+                    pool.endRebuild();
                 }
                     break;
                 case MODIFIER_REROLL_ADD: {
                     ValidatedModifier modifier = group.modifiers.get(0);
-                    List<DieRoll> newRolls = new ArrayList<>();
                     boolean isSelectorHighestLowest = modifier.selector == TokenType.SELECTOR_HIGHEST
                             || modifier.selector == TokenType.SELECTOR_LOWEST;
-                    List<DieRoll> oldSortedKeptRolls = isSelectorHighestLowest ? sortKeptRolls(rolls) : null;
+                    int keptCount = isSelectorHighestLowest ? pool.rankKept() : 0;
 
                     boolean rerolled = false;
 
-                    for (DieRoll roll : rolls) {
-                        newRolls.add(roll);
-                        if (roll.kept) {
-                            if (!rerolled && shouldReroll(modifier, oldSortedKeptRolls, roll)) {
-                                roll.transform("!");
+                    pool.beginRebuild();
+                    for (int i = 0; i < pool.size(); i++) {
+                        int id = pool.idAt(i);
+                        pool.appendRebuilt(id);
+                        if (pool.isKept(id)) {
+                            if (!rerolled && shouldReroll(modifier, pool, keptCount, id)) {
+                                pool.markExploded(id);
 
-                                if (newRolls.size() > MAX_DICE_ROLLS)
-                                    throw new Exception("Too many dice rolled.");
+                                if (pool.rebuiltSize() > MAX_DICE_ROLLS)
+                                    throw tooManyDiceRolled();
 
-                                roll = new DieRoll(numSides);
-                                newRolls.add(roll);
+                                pool.appendRebuilt(pool.roll(random));
+                                pool.rerolls++;
                                 rerolled = true;
                             }
                         }
                     }
-                    rolls = newRolls;
+                    pool.endRebuild();
                 }
                     break;
                 case MODIFIER_KEEP:
-                    applyKeepUnion(rolls, group.modifiers);
+                    applyKeepUnion(pool, group.modifiers);
                     break;
                 case MODIFIER_DROP:
-                    applyDropUnion(rolls, group.modifiers);
+                    applyDropUnion(pool, group.modifiers);
                     break;
                 default:
                     break;
             }
-        }
-
-        // Calculate total
-        int total = 0;
-        for (DieRoll roll : rolls) {
-            if (roll.value == 1 || roll.value == numSides)
-                roll.bold();
 
-            if (roll.kept)
-                total += roll.value;
-            else
-                roll.strikethrough();
+            Metrics.stop(modifierMetric(group.type), groupStart);
         }
 
-        return new EvaluationResult((float) total,
-                String.format("%s (%s)", display.toString(), String.join(", ",
-                        rolls.stream().map(roll -> roll.transformations).collect(Collectors.toList()))));
-    }
-
-    private List<DieRoll> sortKeptRolls(List<DieRoll> rolls) {
-        return rolls.stream()
-                .filter(r -> r.kept)
-                .sorted(Comparator.comparingInt(r -> r.value))
-                .collect(Collectors.toList());
+        Metrics.increment(Metric.DICE_ROLLED, pool.numDice());
+        return pool;
     }
 
-    private boolean shouldExplode(ValidatedModifier modifier, List<DieRoll> sortedRolls, DieRoll roll) {
+    private boolean shouldExplode(ValidatedModifier modifier, DicePool pool, int keptCount, int id) {
         switch (modifier.selector) {
             case SELECTOR_HIGHEST:
-                return sortedRolls.indexOf(roll) >= sortedRolls.size() - modifier.value;
+                return pool.rank(id) >= keptCount - modifier.value;
             case SELECTOR_LOWEST:
-                return sortedRolls.indexOf(roll) < modifier.value;
+                return pool.rank(id) < modifier.value;
             case SELECTOR_GREATER_THAN:
-                return roll.value > modifier.value;
+                return pool.value(id) > modifier.value;
             case SELECTOR_LESS_THAN:
-                return roll.value < modifier.value;
+                return pool.value(id) < modifier.value;
             case SELECTOR_LITERAL:
-                return roll.value == modifier.value;
+                return pool.value(id) == modifier.value;
             default:
                 return false;
         }
     }
 
-    private boolean shouldReroll(ValidatedModifier modifier, List<DieRoll> sortedRolls, DieRoll roll) throws Exception {
+    private boolean shouldReroll(ValidatedModifier modifier, DicePool pool, int keptCount, int id) throws Exception {
         switch (modifier.selector) {
             case SELECTOR_HIGHEST:
                 if (modifier.type == TokenType.MODIFIER_REROLL)
                     throw new Exception("REROLL modifier cannot use 'h' selector.");
-                return sortedRolls.indexOf(roll) >= sortedRolls.size() - modifier.value;
+                return pool.rank(id) >= keptCount - modifier.value;
             case SELECTOR_LOWEST:
                 if (modifier.type == TokenType.MODIFIER_REROLL)
                     throw new Exception("REROLL modifier cannot use 'l' selector.");
-                return sortedRolls.indexOf(roll) < modifier.value;
+                return pool.rank(id) < modifier.value;
             case SELECTOR_GREATER_THAN:
-                return roll.value > modifier.value;
+                return pool.value(id) > modifier.value;
             case SELECTOR_LESS_THAN:
-                return roll.value < modifier.value;
+                return pool.value(id) < modifier.value;
             case SELECTOR_LITERAL:
-                return roll.value == modifier.value;
+                return pool.value(id) == modifier.value;
             default:
                 return false;
         }
     }
 
-    private void applyKeepUnion(List<DieRoll> rolls, List<ValidatedModifier> modifiers) {
-        int keepHighestValue = UNSET_VALUE;
-        int keepLowestValue = UNSET_VALUE;
-        int keepGreaterThanValue = UNSET_VALUE;
-        int keepLessThanValue = UNSET_VALUE;
-        Set<Integer> keepLiteralValues = new HashSet<>();
+    private void applyKeepUnion(DicePool pool, List<ValidatedModifier> modifiers) {
+        SelectorUnion union = new SelectorUnion(modifiers);
+        int keptCount = pool.rankKept();
+
+        for (int i = 0; i < pool.size(); i++) {
+            int id = pool.idAt(i);
+            if (pool.isKept(id) && !union.matches(pool.rank(id), keptCount, pool.value(id)))
+                pool.discard(id);
+        }
+    }
+
+    private void applyDropUnion(DicePool pool, List<ValidatedModifier> modifiers) {
+        SelectorUnion union = new SelectorUnion(modifiers);
+        int keptCount = pool.rankKept();
+
+        for (int i = 0; i < pool.size(); i++) {
+            int id = pool.idAt(i);
+            if (pool.isKept(id) && union.matches(pool.rank(id), keptCount, pool.value(id)))
+                pool.discard(id);
+        }
+    }
+
+    // === HISTOGRAM ===
+
+    private boolean useHistogram(int numDice, int numSides, List<ModifierGroup> modifierGroups) {
+        if (numSides < 1)
+            return false;
+
+        long range = (long) histogramMaxValue(numSides, modifierGroups) - histogramMinValue(modifierGroups) + 1;
+        return range <= MAX_HISTOGRAM_RANGE && numDice >= range * HISTOGRAM_DICE_PER_FACE;
+    }
+
+    private int histogramMinValue(List<ModifierGroup> modifierGroups) {
+        int minValue = 1;
+        for (ModifierGroup group : modifierGroups) {
+            if (group.type == TokenType.MODIFIER_MINIMUM || group.type == TokenType.MODIFIER_MAXIMUM)
+                minValue = Math.min(minValue, group.modifiers.get(0).value);
+        }
+        return minValue;
+    }
+
+    private int histogramMaxValue(int numSides, List<ModifierGroup> modifierGroups) {
+        int maxValue = numSides;
+        for (ModifierGroup group : modifierGroups) {
+            if (group.type == TokenType.MODIFIER_MINIMUM || group.type == TokenType.MODIFIER_MAXIMUM)
+                maxValue = Math.max(maxValue, group.modifiers.get(0).value);
+        }
+        return maxValue;
+    }
+
+    // Same modifier semantics as rollPool, applied to face counts. Dice of equal value are
+    // interchangeable for the total, so highest/lowest selectors just take counts from either end.
+    private DiceHistogram rollHistogram(EvaluationContext context, int numDice, int numSides,
+            List<ModifierGroup> modifierGroups) throws Exception {
+        RandomSource random = context.getRandom();
+        context.checkCancelled();
 
-        for (ValidatedModifier modifier : modifiers) {
-            switch (modifier.selector) {
-                case SELECTOR_HIGHEST:
-                    if (keepHighestValue == UNSET_VALUE || modifier.value > keepHighestValue)
-                        keepHighestValue = modifier.value;
+        DiceHistogram histogram = context.getBuffers().histogram();
+        histogram.reset(numSides, histogramMinValue(modifierGroups), histogramMaxValue(numSides, modifierGroups));
+        histogram.rollBase(random, numDice);
+
+        for (ModifierGroup group : modifierGroups) {
+            context.checkCancelled();
+            long groupStart = Metrics.start();
+            ValidatedModifier modifier = group.modifiers.get(0);
+
+            switch (group.type) {
+                case MODIFIER_MINIMUM:
+                    if (modifier.selector != TokenType.SELECTOR_LITERAL)
+                        throw new Exception("MINIMUM modifier can only use literal selector.");
+                    histogram.applyMinimum(modifier.value);
                     break;
-                case SELECTOR_LOWEST:
-                    if (keepLowestValue == UNSET_VALUE || modifier.value > keepLowestValue)
-                        keepLowestValue = modifier.value;
+                case MODIFIER_MAXIMUM:
+                    if (modifier.selector != TokenType.SELECTOR_LITERAL)
+                        throw new Exception("MAXIMUM modifier can only use literal selector.");
+                    histogram.applyMaximum(modifier.value);
                     break;
-                case SELECTOR_GREATER_THAN:
-                    if (keepGreaterThanValue == UNSET_VALUE || modifier.value < keepGreaterThanValue)
-                        keepGreaterThanValue = modifier.value;
+                case MODIFIER_EXPLODE: {
+                    // Highest/lowest selectors explode each selected die once
+                    if (modifier.selector == TokenType.SELECTOR_HIGHEST
+                            || modifier.selector == TokenType.SELECTOR_LOWEST) {
+                        long exploding = Math.min(modifier.value, histogram.keptCount());
+                        if (exploding > 0) {
+                            rollHistogramBatch(histogram, random, exploding);
+                            histogram.explosions += exploding;
+                            histogram.addBatch();
+                        }
+                        break;
+                    }
+
+                    long exploding = 0;
+                    for (int i = 0; i < histogram.range(); i++) {
+                        if (matchesValue(modifier, histogram.valueAt(i)))
+                            exploding += histogram.count(i);
+                    }
+
+                    while (exploding > 0) {
+                        context.checkCancelled();
+                        rollHistogramBatch(histogram, random, exploding);
+                        histogram.explosions += exploding;
+
+                        exploding = 0;
+                        for (int i = 0; i < histogram.range(); i++) {
+                            if (matchesValue(modifier, histogram.valueAt(i)))
+                                exploding += histogram.batchCount(i);
+                        }
+                        histogram.addBatch();
+                    }
+                }
                     break;
-                case SELECTOR_LESS_THAN:
-                    if (keepLessThanValue == UNSET_VALUE || modifier.value > keepLessThanValue)
-                        keepLessThanValue = modifier.value;
+                case MODIFIER_REROLL: {
+                    if (modifier.selector == TokenType.SELECTOR_HIGHEST)
+                        throw new Exception("REROLL modifier cannot use 'h' selector.");
+                    if (modifier.selector == TokenType.SELECTOR_LOWEST)
+                        throw new Exception("REROLL modifier cannot use 'l' selector.");
+
+                    long rerolling = discardSelected(histogram, modifier);
+
+                    while (rerolling > 0) {
+                        context.checkCancelled();
+                        rollHistogramBatch(histogram, random, rerolling);
+                        histogram.rerolls += rerolling;
+
+                        rerolling = 0;
+                        for (int i = 0; i < histogram.range(); i++) {
+                            if (matchesValue(modifier, histogram.valueAt(i))) {
+                                rerolling += histogram.batchCount(i);
+                                histogram.setBatchCount(i, 0);
+                            }
+                        }
+                        histogram.addBatch();
+                    }
+                }
                     break;
-                case SELECTOR_LITERAL:
-                    keepLiteralValues.add(modifier.value);
+                case MODIFIER_REROLL_ONCE: {
+                    long rerolling = discardSelected(histogram, modifier);
+                    if (rerolling > 0) {
+                        rollHistogramBatch(histogram, random, rerolling);
+                        histogram.rerolls += rerolling;
+                        histogram.addBatch();
+                    }
+                }
+                    break;
+                case MODIFIER_REROLL_ADD: {
+                    boolean anySelected;
+                    if (modifier.selector == TokenType.SELECTOR_HIGHEST
+                            || modifier.selector == TokenType.SELECTOR_LOWEST) {
+                        anySelected = modifier.value > 0 && histogram.keptCount() > 0;
+                    } else {
+                        anySelected = false;
+                        for (int i = 0; i < histogram.range(); i++) {
+                            if (histogram.count(i) > 0 && matchesValue(modifier, histogram.valueAt(i)))
+                                anySelected = true;
+                        }
+                    }
+
+                    if (anySelected) {
+                        rollHistogramBatch(histogram, random, 1);
+                        histogram.rerolls++;
+                        histogram.addBatch();
+                    }
+                }
+                    break;
+                case MODIFIER_KEEP:
+                    applyKeepUnion(histogram, group.modifiers);
+                    break;
+                case MODIFIER_DROP:
+                    applyDropUnion(histogram, group.modifiers);
                     break;
                 default:
                     break;
             }
+
+            Metrics.stop(modifierMetric(group.type), groupStart);
+        }
+
+        Metrics.increment(Metric.DICE_ROLLED, histogram.numDice());
+        return histogram;
+    }
+
+    private void rollHistogramBatch(DiceHistogram histogram, RandomSource random, long count) throws Exception {
+        if (histogram.numDice() + count > MAX_DICE_ROLLS)
+            throw tooManyDiceRolled();
+        histogram.rollBatch(random, count);
+    }
+
+    // === METRICS ===
+
+    private static Exception tooManyDiceRolled() {
+        Metrics.increment(Metric.DICE_LIMIT_REJECTIONS, 1);
+        return new Exception("Too many dice rolled.");
+    }
+
+    private static Metric modifierMetric(TokenType type) {
+        switch (type) {
+            case MODIFIER_MINIMUM:
+                return Metric.MODIFIER_MINIMUM;
+            case MODIFIER_MAXIMUM:
+                return Metric.MODIFIER_MAXIMUM;
+            case MODIFIER_EXPLODE:
+                return Metric.MODIFIER_EXPLODE;
+            case MODIFIER_REROLL:
+                return Metric.MODIFIER_REROLL;
+            case MODIFIER_REROLL_ONCE:
+                return Metric.MODIFIER_REROLL_ONCE;
+            case MODIFIER_REROLL_ADD:
+                return Metric.MODIFIER_REROLL_ADD;
+            case MODIFIER_KEEP:
+                return Metric.MODIFIER_KEEP;
+            default:
+                return Metric.MODIFIER_DROP;
         }
+    }
+
+    // Discards the kept dice selected by a single modifier and returns how many there were
+    private long discardSelected(DiceHistogram histogram, ValidatedModifier modifier) {
+        long selected = 0;
 
-        List<DieRoll> sortedRolls = sortKeptRolls(rolls);
+        switch (modifier.selector) {
+            case SELECTOR_HIGHEST:
+                for (int i = histogram.range() - 1; i >= 0 && selected < modifier.value; i--) {
+                    long taken = Math.min(histogram.count(i), modifier.value - selected);
+                    histogram.setCount(i, histogram.count(i) - taken);
+                    selected += taken;
+                }
+                break;
+            case SELECTOR_LOWEST:
+                for (int i = 0; i < histogram.range() && selected < modifier.value; i++) {
+                    long taken = Math.min(histogram.count(i), modifier.value - selected);
+                    histogram.setCount(i, histogram.count(i) - taken);
+                    selected += taken;
+                }
+                break;
+            default:
+                for (int i = 0; i < histogram.range(); i++) {
+                    if (matchesValue(modifier, histogram.valueAt(i))) {
+                        selected += histogram.count(i);
+                        histogram.setCount(i, 0);
+                    }
+                }
+                break;
+        }
 
-        for (int i = 0; i < sortedRolls.size(); i++) {
-            DieRoll roll = sortedRolls.get(i);
+        return selected;
+    }
 
-            boolean keepAsHighest = keepHighestValue != UNSET_VALUE && i >= sortedRolls.size() - keepHighestValue;
-            boolean keepAsLowest = keepLowestValue != UNSET_VALUE && i < keepLowestValue;
-            boolean keepAsGreaterThan = keepGreaterThanValue != UNSET_VALUE && roll.value > keepGreaterThanValue;
-            boolean keepAsLessThan = keepLessThanValue != UNSET_VALUE && roll.value < keepLessThanValue;
-            boolean keepAsLiteral = keepLiteralValues.contains(roll.value);
+    private void applyKeepUnion(DiceHistogram histogram, List<ValidatedModifier> modifiers) {
+        SelectorUnion union = new SelectorUnion(modifiers);
+        long keptCount = histogram.keptCount();
+        long rankStart = 0;
 
-            if (!keepAsHighest && !keepAsLowest && !keepAsGreaterThan && !keepAsLessThan && !keepAsLiteral)
-                roll.discard();
+        for (int i = 0; i < histogram.range(); i++) {
+            long count = histogram.count(i);
+            histogram.setCount(i, union.countMatching(rankStart, count, keptCount, histogram.valueAt(i)));
+            rankStart += count;
         }
     }
 
-    private void applyDropUnion(List<DieRoll> rolls, List<ValidatedModifier> modifiers) {
-        int dropHighestValue = UNSET_VALUE;
-        int dropLowestValue = UNSET_VALUE;
-        int dropGreaterThanValue = UNSET_VALUE;
-        int dropLessThanValue = UNSET_VALUE;
-        Set<Integer> dropLiteralValues = new HashSet<>();
+    private void applyDropUnion(DiceHistogram histogram, List<ValidatedModifier> modifiers) {
+        SelectorUnion union = new SelectorUnion(modifiers);
+        long keptCount = histogram.keptCount();
+        long rankStart = 0;
 
-        for (ValidatedModifier modifier : modifiers) {
-            switch (modifier.selector) {
-                case SELECTOR_HIGHEST:
-                    if (dropHighestValue == UNSET_VALUE || modifier.value > dropHighestValue)
-                        dropHighestValue = modifier.value;
-                    break;
-                case SELECTOR_LOWEST:
-                    if (dropLowestValue == UNSET_VALUE || modifier.value > dropLowestValue)
-                        dropLowestValue = modifier.value;
-                    break;
-                case SELECTOR_GREATER_THAN:
-                    if (dropGreaterThanValue == UNSET_VALUE || modifier.value < dropGreaterThanValue)
-                        dropGreaterThanValue = modifier.value;
-                    break;
-                case SELECTOR_LESS_THAN:
-                    if (dropLessThanValue == UNSET_VALUE || modifier.value > dropLessThanValue)
-                        dropLessThanValue = modifier.value;
-                    break;
-                case SELECTOR_LITERAL:
-                    dropLiteralValues.add(modifier.value);
-                    break;
-                default:
-                    break;
+        for (int i = 0; i < histogram.range(); i++) {
+            long count = histogram.count(i);
+            histogram.setCount(i, count - union.countMatching(rankStart, count, keptCount, histogram.valueAt(i)));
+            rankStart += count;
+        }
+    }
+
+    private static boolean matchesValue(ValidatedModifier modifier, int value) {
+        switch (modifier.selector) {
+            case SELECTOR_GREATER_THAN:
+                return value > modifier.value;
+            case SELECTOR_LESS_THAN:
+                return value < modifier.value;
+            case SELECTOR_LITERAL:
+                return value == modifier.value;
+            default:
+                return false;
+        }
+    }
+
+    // === SELECTOR UNION ===
+
+    // Consecutive k/p modifiers select the union of their selectors, so each selector kind only
+    // needs its most inclusive value
+    private static class SelectorUnion {
+        private int highest = UNSET_VALUE;
+        private int lowest = UNSET_VALUE;
+        private int greaterThan = UNSET_VALUE;
+        private int lessThan = UNSET_VALUE;
+        private final int[] literals;
+        private int literalCount;
+
+        SelectorUnion(List<ValidatedModifier> modifiers) {
+            literals = new int[modifiers.size()];
+
+            for (ValidatedModifier modifier : modifiers) {
+                switch (modifier.selector) {
+                    case SELECTOR_HIGHEST:
+                        if (highest == UNSET_VALUE || modifier.value > highest)
+                            highest = modifier.value;
+                        break;
+                    case SELECTOR_LOWEST:
+                        if (lowest == UNSET_VALUE || modifier.value > lowest)
+                            lowest = modifier.value;
+                        break;
+                    case SELECTOR_GREATER_THAN:
+                        if (greaterThan == UNSET_VALUE || modifier.value < greaterThan)
+                            greaterThan = modifier.value;
+                        break;
+                    case SELECTOR_LESS_THAN:
+                        if (lessThan == UNSET_VALUE || modifier.value > lessThan)
+                            lessThan = modifier.value;
+                        break;
+                    case SELECTOR_LITERAL:
+                        literals[literalCount++] = modifier.value;
+                        break;
+                    default:
+                        break;
+                }
             }
         }
 
-        List<DieRoll> sortedRolls = sortKeptRolls(rolls);
+        boolean matches(long rank, long keptCount, int value) {
+            return (highest != UNSET_VALUE && rank >= keptCount - highest)
+                    || (lowest != UNSET_VALUE && rank < lowest)
+                    || matchesValue(value);
+        }
 
-        for (int i = 0; i < sortedRolls.size(); i++) {
-            DieRoll roll = sortedRolls.get(i);
+        // Number of dice showing value, holding ranks [rankStart, rankStart + count), that are selected
+        long countMatching(long rankStart, long count, long keptCount, int value) {
+            if (matchesValue(value))
+                return count;
 
-            boolean dropAsHighest = dropHighestValue != UNSET_VALUE && i >= sortedRolls.size() - dropHighestValue;
-            boolean dropAsLowest = dropLowestValue != UNSET_VALUE && i < dropLowestValue;
-            boolean dropAsGreaterThan = dropGreaterThanValue != UNSET_VALUE && roll.value > dropGreaterThanValue;
-            boolean dropAsLessThan = dropLessThanValue != UNSET_VALUE && roll.value < dropLessThanValue;
-            boolean dropAsLiteral = dropLiteralValues.contains(roll.value);
+            long rankEnd = rankStart + count;
+            long lowestEnd = lowest == UNSET_VALUE ? 0 : lowest;
+            long highestStart = highest == UNSET_VALUE ? keptCount : keptCount - highest;
+
+            return overlap(rankStart, rankEnd, 0, lowestEnd)
+                    + overlap(rankStart, rankEnd, highestStart, keptCount)
+                    - overlap(rankStart, rankEnd, Math.max(0, highestStart), Math.min(lowestEnd, keptCount));
+        }
+
+        private boolean matchesValue(int value) {
+            if (greaterThan != UNSET_VALUE && value > greaterThan)
+                return true;
+            if (lessThan != UNSET_VALUE && value < lessThan)
+                return true;
+            for (int i = 0; i < literalCount; i++) {
+                if (literals[i] == value)
+                    return true;
+            }
+            return false;
+        }
 
-            if (dropAsHighest || dropAsLowest || dropAsGreaterThan || dropAsLessThan || dropAsLiteral)
-                roll.discard();
+        private static long overlap(long start, long end, long otherStart, long otherEnd) {
+            return Math.max(0, Math.min(end, otherEnd) - Math.max(start, otherStart));
         }
     }
 }
@@ -0,0 +1,124 @@
+package com.makesvaporware.diceparserjava.parser;
+
+import java.util.Arrays;
+
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Face-count storage for large dice pools when only the total is needed. Instead of one entry per
+// die it keeps, for every face value, how many kept dice show it. Discarded dice only count
+// towards the number of dice rolled. Dice showing the same face are interchangeable, so every
+// modifier can be applied in O(numSides) no matter how many dice are in the pool.
+class DiceHistogram {
+    int numSides;
+
+    // counts[i] is the number of kept dice showing minValue + i
+    private int minValue;
+    private int range;
+    private long[] counts = new long[16];
+    private long[] batch = new long[16];
+    private long numDice;
+
+    // Dice added by explode and reroll modifiers since the last reset
+    long explosions;
+    long rerolls;
+
+    // Values outside [1, numSides] only appear through minimum/maximum modifiers, so the caller
+    // widens the range to cover those.
+    void reset(int numSides, int minValue, int maxValue) {
+        this.numSides = numSides;
+        this.minValue = minValue;
+        this.range = maxValue - minValue + 1;
+        this.numDice = 0;
+        this.explosions = 0;
+        this.rerolls = 0;
+
+        if (counts.length < range) {
+            counts = new long[range];
+            batch = new long[range];
+        } else {
+            Arrays.fill(counts, 0, range, 0);
+        }
+    }
+
+    // === DICE ===
+
+    void rollBase(RandomSource random, long count) {
+        random.rollFaceCounts(counts, 1 - minValue, count, numSides);
+        numDice += count;
+    }
+
+    // Rolls count new dice into the batch buffer, which replaces whatever it held before
+    void rollBatch(RandomSource random, long count) {
+        Arrays.fill(batch, 0, range, 0);
+        random.rollFaceCounts(batch, 1 - minValue, count, numSides);
+        numDice += count;
+    }
+
+    void addBatch() {
+        for (int i = 0; i < range; i++)
+            counts[i] += batch[i];
+    }
+
+    // Number of dice rolled so far, kept or not
+    long numDice() {
+        return numDice;
+    }
+
+    int range() {
+        return range;
+    }
+
+    int valueAt(int index) {
+        return minValue + index;
+    }
+
+    long count(int index) {
+        return counts[index];
+    }
+
+    long batchCount(int index) {
+        return batch[index];
+    }
+
+    void setCount(int index, long count) {
+        counts[index] = count;
+    }
+
+    void setBatchCount(int index, long count) {
+        batch[index] = count;
+    }
+
+    // Raises every kept die below value up to value
+    void applyMinimum(int value) {
+        long moved = 0;
+        for (int i = 0; i < value - minValue; i++) {
+            moved += counts[i];
+            counts[i] = 0;
+        }
+        counts[value - minValue] += moved;
+    }
+
+    // Lowers every kept die above value down to value
+    void applyMaximum(int value) {
+        long moved = 0;
+        for (int i = value - minValue + 1; i < range; i++) {
+            moved += counts[i];
+            counts[i] = 0;
+        }
+        counts[value - minValue] += moved;
+    }
+
+    long keptCount() {
+        long total = 0;
+        for (int i = 0; i < range; i++)
+            total += counts[i];
+        return total;
+    }
+
+    long keptTotal() {
+        long total = 0;
+        for (int i = 0; i < range; i++)
+            total += counts[i] * (minValue + i);
+        return total;
+    }
+}
@@ -0,0 +1,344 @@
+package com.makesvaporware.diceparserjava.parser;
+
+import java.util.Arrays;
+
+import com.makesvaporware.diceparserjava.evaluator.RollLog;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Primitive storage for every die rolled by a single DiceExprNode evaluation.
+// Dice are identified by their creation index, and `order` holds those ids in display order.
+// Buffers only ever grow, so a pool can be reset and reused across evaluations.
+class DicePool {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SPARE_DICE_BATCH = 32;
+    private static final int MAX_COUNTING_SORT_RANGE = 1 << 16;
+
+    int numSides;
+    private boolean recordHistory;
+
+    // Dice added by explode and reroll modifiers since the last reset
+    long explosions;
+    long rerolls;
+
+    // Per-die state, indexed by die id
+    private int numDice;
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int[] originalValues = new int[INITIAL_CAPACITY];
+    private long[] discarded = new long[1];
+    private int[] ranks = new int[INITIAL_CAPACITY];
+
+    // Display order, double-buffered so explode/reroll groups can interleave new dice
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int orderSize;
+    private int[] nextOrder = new int[INITIAL_CAPACITY];
+    private int nextOrderSize;
+
+    private long[] sortBuffer = new long[INITIAL_CAPACITY];
+    private int[] rankCounts = new int[INITIAL_CAPACITY];
+
+    // Dice rolled ahead of time in one batch for explode/reroll modifiers
+    private final int[] spareDice = new int[SPARE_DICE_BATCH];
+    private int spareDiceIndex;
+
+    // Transformation history, kept as a linked list of events per die
+    private int numEvents;
+    private int[] firstEvent = new int[INITIAL_CAPACITY];
+    private int[] lastEvent = new int[INITIAL_CAPACITY];
+    private int[] eventNext = new int[INITIAL_CAPACITY];
+    private int[] eventValue = new int[INITIAL_CAPACITY];
+    private byte[] eventType = new byte[INITIAL_CAPACITY];
+
+    void reset(int numSides, boolean recordHistory) {
+        this.numSides = numSides;
+        this.recordHistory = recordHistory;
+        this.numDice = 0;
+        this.explosions = 0;
+        this.rerolls = 0;
+        this.orderSize = 0;
+        this.nextOrderSize = 0;
+        this.numEvents = 0;
+        this.spareDiceIndex = SPARE_DICE_BATCH;
+    }
+
+    // === DICE ===
+
+    // Rolls count dice in one batch and appends them to the display order
+    void rollBase(RandomSource random, int count) {
+        while (values.length < numDice + count)
+            growDice();
+
+        if (order.length < orderSize + count)
+            order = Arrays.copyOf(order, Math.max(orderSize + count, order.length * 2));
+
+        random.rollDice(values, numDice, count, numSides);
+
+        int start = numDice;
+        int end = numDice + count;
+
+        for (int id = start; id < end; id++)
+            order[orderSize++] = id;
+
+        for (int id = start; id < end; id++)
+            discarded[id >>> 6] &= ~(1L << id);
+
+        if (recordHistory) {
+            System.arraycopy(values, start, originalValues, start, count);
+            Arrays.fill(firstEvent, start, end, -1);
+        }
+
+        numDice = end;
+    }
+
+    // Creates a new die rolled from the spare batch and returns its id. The die is not placed in display order.
+    int roll(RandomSource random) {
+        if (spareDiceIndex == SPARE_DICE_BATCH) {
+            random.rollDice(spareDice, 0, SPARE_DICE_BATCH, numSides);
+            spareDiceIndex = 0;
+        }
+        return add(spareDice[spareDiceIndex++]);
+    }
+
+    // Creates a new die with the given face value and returns its id. The die is not placed in display order.
+    int add(int value) {
+        int id = numDice;
+        if (id == values.length)
+            growDice();
+
+        values[id] = value;
+        discarded[id >>> 6] &= ~(1L << id);
+
+        if (recordHistory) {
+            originalValues[id] = value;
+            firstEvent[id] = -1;
+        }
+
+        numDice++;
+        return id;
+    }
+
+    // Every die created since reset, including rerolled and exploded ones
+    int numDice() {
+        return numDice;
+    }
+
+    int value(int id) {
+        return values[id];
+    }
+
+    boolean isKept(int id) {
+        return (discarded[id >>> 6] & (1L << id)) == 0;
+    }
+
+    void discard(int id) {
+        discarded[id >>> 6] |= 1L << id;
+    }
+
+    void transformValue(int id, int value) {
+        values[id] = value;
+        if (recordHistory)
+            addEvent(id, RollLog.EVENT_VALUE, value);
+    }
+
+    void markExploded(int id) {
+        if (recordHistory)
+            addEvent(id, RollLog.EVENT_EXPLODE, 0);
+    }
+
+    long keptTotal() {
+        long total = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (isKept(id))
+                total += values[id];
+        }
+        return total;
+    }
+
+    // === ORDER ===
+
+    int size() {
+        return orderSize;
+    }
+
+    int idAt(int index) {
+        return order[index];
+    }
+
+    void append(int id) {
+        if (orderSize == order.length)
+            order = Arrays.copyOf(order, orderSize * 2);
+        order[orderSize++] = id;
+    }
+
+    // Starts a pass that rebuilds the display order, e.g. to interleave exploded dice after their source die
+    void beginRebuild() {
+        nextOrderSize = 0;
+    }
+
+    void appendRebuilt(int id) {
+        if (nextOrderSize == nextOrder.length)
+            nextOrder = Arrays.copyOf(nextOrder, nextOrderSize * 2);
+        nextOrder[nextOrderSize++] = id;
+    }
+
+    int rebuiltSize() {
+        return nextOrderSize;
+    }
+
+    void endRebuild() {
+        int[] tmp = order;
+        order = nextOrder;
+        nextOrder = tmp;
+        orderSize = nextOrderSize;
+        nextOrderSize = 0;
+    }
+
+    // === RANKS ===
+
+    // Ranks every kept die by value (ties broken by display order) and returns the number of kept dice.
+    // Discarded dice keep whatever rank they had before.
+    int rankKept() {
+        int keptCount = 0;
+        int minValue = Integer.MAX_VALUE;
+        int maxValue = Integer.MIN_VALUE;
+
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (isKept(id)) {
+                keptCount++;
+                minValue = Math.min(minValue, values[id]);
+                maxValue = Math.max(maxValue, values[id]);
+            }
+        }
+
+        if (keptCount == 0)
+            return 0;
+
+        // Face values span a small range for ordinary dice, so a counting sort is O(n + sides)
+        long range = (long) maxValue - minValue + 1;
+        if (range <= MAX_COUNTING_SORT_RANGE && range <= 2L * keptCount + 64)
+            rankByCounting(minValue, (int) range);
+        else
+            rankBySorting();
+
+        return keptCount;
+    }
+
+    int rank(int id) {
+        return ranks[id];
+    }
+
+    private void rankByCounting(int minValue, int range) {
+        if (rankCounts.length < range)
+            rankCounts = new int[Math.max(range, rankCounts.length * 2)];
+
+        Arrays.fill(rankCounts, 0, range, 0);
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (isKept(id))
+                rankCounts[values[id] - minValue]++;
+        }
+
+        // Turn counts into the first rank of each value
+        int next = 0;
+        for (int value = 0; value < range; value++) {
+            int count = rankCounts[value];
+            rankCounts[value] = next;
+            next += count;
+        }
+
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (isKept(id))
+                ranks[id] = rankCounts[values[id] - minValue]++;
+        }
+    }
+
+    private void rankBySorting() {
+        if (sortBuffer.length < orderSize)
+            sortBuffer = new long[Math.max(orderSize, sortBuffer.length * 2)];
+
+        int keptCount = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (isKept(id))
+                sortBuffer[keptCount++] = ((long) values[id] << 32) | i;
+        }
+
+        Arrays.sort(sortBuffer, 0, keptCount);
+
+        for (int rank = 0; rank < keptCount; rank++)
+            ranks[order[(int) sortBuffer[rank]]] = rank;
+    }
+
+    // === LOG ===
+
+    // Copies the dice out in display order; the pool itself is reused by the next roll with the same context
+    RollLog toRollLog() {
+        int[] logValues = new int[orderSize];
+        boolean[] logKept = new boolean[orderSize];
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            logValues[i] = values[id];
+            logKept[i] = isKept(id);
+        }
+
+        if (numEvents == 0)
+            return new RollLog(numSides, logValues, logKept);
+
+        int[] logOriginalValues = new int[orderSize];
+        int[] eventOffsets = new int[orderSize + 1];
+        byte[] logEventTypes = new byte[numEvents];
+        int[] logEventValues = new int[numEvents];
+
+        int next = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            logOriginalValues[i] = originalValues[id];
+            eventOffsets[i] = next;
+            for (int event = firstEvent[id]; event != -1; event = eventNext[event]) {
+                logEventTypes[next] = eventType[event];
+                logEventValues[next] = eventValue[event];
+                next++;
+            }
+        }
+        eventOffsets[orderSize] = next;
+
+        return new RollLog(numSides, logValues, logOriginalValues, logKept, eventOffsets, logEventTypes,
+                logEventValues);
+    }
+
+    // === HELPERS ===
+
+    private void addEvent(int id, byte type, int value) {
+        int event = numEvents;
+        if (event == eventNext.length) {
+            int capacity = event * 2;
+            eventNext = Arrays.copyOf(eventNext, capacity);
+            eventValue = Arrays.copyOf(eventValue, capacity);
+            eventType = Arrays.copyOf(eventType, capacity);
+        }
+
+        eventNext[event] = -1;
+        eventValue[event] = value;
+        eventType[event] = type;
+
+        if (firstEvent[id] == -1)
+            firstEvent[id] = event;
+        else
+            eventNext[lastEvent[id]] = event;
+        lastEvent[id] = event;
+
+        numEvents++;
+    }
+
+    private void growDice() {
+        int capacity = values.length * 2;
+        values = Arrays.copyOf(values, capacity);
+        originalValues = Arrays.copyOf(originalValues, capacity);
+        ranks = Arrays.copyOf(ranks, capacity);
+        firstEvent = Arrays.copyOf(firstEvent, capacity);
+        lastEvent = Arrays.copyOf(lastEvent, capacity);
+        discarded = Arrays.copyOf(discarded, (capacity + 63) >>> 6);
+    }
+}
@@ -1,16 +1,31 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 
 public class FloatLiteralNode extends ASTNode {
-    private float value;
+    private final float value;
 
     public FloatLiteralNode(float value) {
         this.value = value;
     }
 
+    public float getValue() {
+        return value;
+    }
+
     @Override
-    public EvaluationResult evaluate() throws Exception {
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
         return new EvaluationResult(value, Float.toString(value));
     }
+
+    @Override
+    public float evaluateValue(EvaluationContext context) {
+        return value;
+    }
+
+    @Override
+    public double integerBound() {
+        return Double.POSITIVE_INFINITY;
+    }
 }
@@ -1,16 +1,36 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 
 public class IntegerLiteralNode extends ASTNode {
-    private int value;
+    private final int value;
 
     public IntegerLiteralNode(int value) {
         this.value = value;
     }
 
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
+        return EvaluationResult.literal(value, Integer.toString(value));
+    }
+
+    @Override
+    public float evaluateValue(EvaluationContext context) {
+        return value;
+    }
+
+    @Override
+    public double integerBound() {
+        return Math.abs((double) value);
+    }
+
     @Override
-    public EvaluationResult evaluate() throws Exception {
-        return new EvaluationResult(value, Integer.toString(value));
+    public long evaluateLong(EvaluationContext context) {
+        return value;
     }
 }
@@ -3,9 +3,9 @@ package com.makesvaporware.diceparserjava.parser;
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
 
 public class Modifier {
-    public TokenType type;
-    public TokenType selector;
-    public ASTNode factor;
+    public final TokenType type;
+    public final TokenType selector;
+    public final ASTNode factor;
 
     public Modifier(TokenType type, TokenType selector, ASTNode factor) {
         this.type = type;
@@ -0,0 +1,237 @@
+package com.makesvaporware.diceparserjava.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+
+// Simplifies a parsed tree for total-only evaluation (evaluateValue, compiled rolls, simulation).
+// The result rolls the same dice in the same order but loses the original display notation,
+// so trees that are shown to the user must not be optimized.
+//
+// - Pure-literal subtrees fold into a single literal, except divisions by zero, which are kept
+//   so they still fail when rolled. Integer literals fold exactly, the way evaluateLong() would
+//   compute them, and are left alone if the result doesn't fit in an int. Anything involving a
+//   float literal or division folds to a float literal, even when whole, so the folded tree takes
+//   the same float or long path as the original.
+// - Parentheses, unary plus and double negation are removed.
+// - Integer constants in a chain of + and - are summed into one trailing constant, e.g.
+//   2 + 1d6 + 3 becomes 1d6 + 5. This reassociates float additions, so it is only done when every
+//   other term is a whole number (no division or fractional literal), which keeps it exact for
+//   totals below 2^24.
+//
+// Dice terms are left untouched: their operands and modifiers must stay literal for validation,
+// and "(1+1)d6" has to keep failing the same way.
+public class Optimizer {
+    // Largest magnitude at which every integer is exact in a float
+    private static final float MAX_EXACT_INTEGER = 1 << 24;
+
+    private Optimizer() {
+    }
+
+    public static ASTNode optimize(ASTNode node) {
+        if (node instanceof ParenthesizedExprNode)
+            return optimize(((ParenthesizedExprNode) node).getInner());
+
+        if (node instanceof UnaryExprNode)
+            return optimizeUnary((UnaryExprNode) node);
+
+        if (node instanceof BinaryExprNode)
+            return optimizeBinary((BinaryExprNode) node);
+
+        return node;
+    }
+
+    private static ASTNode optimizeUnary(UnaryExprNode node) {
+        ASTNode child = optimize(node.getChild());
+
+        switch (node.getOperator()) {
+            case PLUS:
+                return child;
+            case MINUS: {
+                if (child instanceof IntegerLiteralNode)
+                    return new IntegerLiteralNode(-((IntegerLiteralNode) child).getValue());
+                if (isLiteral(child))
+                    return new FloatLiteralNode(-1 * literalValue(child));
+
+                // -1 * -1 * x is exactly x
+                if (child instanceof UnaryExprNode && ((UnaryExprNode) child).getOperator() == TokenType.MINUS)
+                    return ((UnaryExprNode) child).getChild();
+
+                return child == node.getChild() ? node : new UnaryExprNode(child, TokenType.MINUS);
+            }
+            default:
+                return child == node.getChild() ? node : new UnaryExprNode(child, node.getOperator());
+        }
+    }
+
+    private static ASTNode optimizeBinary(BinaryExprNode node) {
+        ASTNode left = optimize(node.getLeft());
+        ASTNode right = optimize(node.getRight());
+        TokenType operator = node.getOperator();
+
+        if (left instanceof IntegerLiteralNode && right instanceof IntegerLiteralNode
+                && operator != TokenType.DIVIDE) {
+            ASTNode folded = foldIntegers((IntegerLiteralNode) left, (IntegerLiteralNode) right, operator);
+            if (folded != null)
+                return folded;
+        } else if (isLiteral(left) && isLiteral(right)) {
+            float a = literalValue(left);
+            float b = literalValue(right);
+
+            switch (operator) {
+                case PLUS:
+                    return new FloatLiteralNode(a + b);
+                case MINUS:
+                    return new FloatLiteralNode(a - b);
+                case MULTIPLY:
+                    return new FloatLiteralNode(a * b);
+                case DIVIDE:
+                    if (b != 0)
+                        return new FloatLiteralNode(a / b);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (operator == TokenType.PLUS || operator == TokenType.MINUS)
+            return mergeAdditiveConstants(new BinaryExprNode(left, right, operator));
+
+        if (left == node.getLeft() && right == node.getRight())
+            return node;
+        return new BinaryExprNode(left, right, operator);
+    }
+
+    // Null when the result doesn't fit in an int, so the node stays and is computed as a long.
+    // Integer.MIN_VALUE is left out too, so negating a folded literal can't overflow.
+    private static ASTNode foldIntegers(IntegerLiteralNode left, IntegerLiteralNode right, TokenType operator) {
+        long a = left.getValue();
+        long b = right.getValue();
+        long result;
+
+        switch (operator) {
+            case PLUS:
+                result = a + b;
+                break;
+            case MINUS:
+                result = a - b;
+                break;
+            case MULTIPLY:
+                result = a * b;
+                break;
+            default:
+                return null;
+        }
+
+        if (result <= Integer.MIN_VALUE || result > Integer.MAX_VALUE)
+            return null;
+        return new IntegerLiteralNode((int) result);
+    }
+
+    // === ADDITIVE CHAINS ===
+
+    private record Term(ASTNode node, boolean negated) {
+    }
+
+    private static ASTNode mergeAdditiveConstants(BinaryExprNode chain) {
+        List<Term> terms = new ArrayList<>();
+        flatten(chain, false, terms);
+
+        // Pull out non-zero integer literals; zeros and float literals stay where they are, since
+        // dropping a zero could flip the sign of a zero total and a float literal keeps the chain
+        // on the float path
+        List<Term> rest = new ArrayList<>();
+        float constant = 0;
+        int numConstants = 0;
+
+        for (Term term : terms) {
+            if (term.node instanceof IntegerLiteralNode) {
+                float value = literalValue(term.node);
+                float sum = term.negated ? constant - value : constant + value;
+
+                if (value != 0 && Math.abs(value) < MAX_EXACT_INTEGER
+                        && Math.abs(sum) < MAX_EXACT_INTEGER) {
+                    constant = sum;
+                    numConstants++;
+                    continue;
+                }
+            }
+            rest.add(term);
+        }
+
+        // Nothing to merge, folding already handled a literal-only chain, or the constants cancel out
+        if (numConstants < 2 || rest.isEmpty() || constant == 0)
+            return chain;
+
+        for (Term term : rest) {
+            if (!isWholeNumber(term.node))
+                return chain;
+        }
+
+        // A leading negative term keeps the constant in front ("3 - 1d6"), otherwise it goes last
+        boolean constantFirst = rest.get(0).negated;
+        ASTNode result = constantFirst ? new IntegerLiteralNode((int) constant) : null;
+
+        for (Term term : rest) {
+            if (result == null)
+                result = term.node;
+            else
+                result = new BinaryExprNode(result, term.node, term.negated ? TokenType.MINUS : TokenType.PLUS);
+        }
+
+        if (!constantFirst)
+            result = new BinaryExprNode(result, new IntegerLiteralNode((int) Math.abs(constant)),
+                    constant > 0 ? TokenType.PLUS : TokenType.MINUS);
+
+        return result;
+    }
+
+    // Children are already optimized, so chains are plain Binary/Unary nodes without parentheses
+    private static void flatten(ASTNode node, boolean negated, List<Term> terms) {
+        if (node instanceof BinaryExprNode) {
+            BinaryExprNode binary = (BinaryExprNode) node;
+            if (binary.getOperator() == TokenType.PLUS || binary.getOperator() == TokenType.MINUS) {
+                flatten(binary.getLeft(), negated, terms);
+                flatten(binary.getRight(), negated != (binary.getOperator() == TokenType.MINUS), terms);
+                return;
+            }
+        }
+
+        if (node instanceof UnaryExprNode && ((UnaryExprNode) node).getOperator() == TokenType.MINUS) {
+            flatten(((UnaryExprNode) node).getChild(), !negated, terms);
+            return;
+        }
+
+        terms.add(new Term(node, negated));
+    }
+
+    // Whether a node always evaluates to a whole number
+    private static boolean isWholeNumber(ASTNode node) {
+        if (node instanceof IntegerLiteralNode || node instanceof DiceExprNode)
+            return true;
+
+        if (node instanceof UnaryExprNode)
+            return isWholeNumber(((UnaryExprNode) node).getChild());
+
+        if (node instanceof BinaryExprNode) {
+            BinaryExprNode binary = (BinaryExprNode) node;
+            return binary.getOperator() != TokenType.DIVIDE
+                    && isWholeNumber(binary.getLeft()) && isWholeNumber(binary.getRight());
+        }
+
+        return false;
+    }
+
+    // === LITERALS ===
+
+    private static boolean isLiteral(ASTNode node) {
+        return node instanceof IntegerLiteralNode || node instanceof FloatLiteralNode;
+    }
+
+    private static float literalValue(ASTNode node) {
+        if (node instanceof IntegerLiteralNode)
+            return ((IntegerLiteralNode) node).getValue();
+        return ((FloatLiteralNode) node).getValue();
+    }
+}
@@ -1,19 +1,40 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 
 public class ParenthesizedExprNode extends ASTNode {
-    private ASTNode inner;
+    private final ASTNode inner;
+    private final double integerBound;
 
     public ParenthesizedExprNode(ASTNode inner) {
         this.inner = inner;
+        this.integerBound = inner.integerBound();
+    }
+
+    public ASTNode getInner() {
+        return inner;
+    }
+
+    @Override
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
+        EvaluationResult innerResult = inner.evaluate(context);
+
+        return EvaluationResult.parenthesized(innerResult);
     }
 
     @Override
-    public EvaluationResult evaluate() throws Exception {
-        EvaluationResult innerResult = inner.evaluate();
+    public float evaluateValue(EvaluationContext context) throws Exception {
+        return inner.evaluateValue(context);
+    }
 
-        return new EvaluationResult(innerResult.value, String.format("(%s)", innerResult.displayString));
+    @Override
+    public double integerBound() {
+        return integerBound;
     }
 
+    @Override
+    public long evaluateLong(EvaluationContext context) throws Exception {
+        return inner.evaluateLong(context);
+    }
 }
@@ -5,12 +5,21 @@ import java.util.List;
 
 import com.makesvaporware.diceparserjava.lexer.Token;
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
+import com.makesvaporware.diceparserjava.lexer.TokenBuffer;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+import com.makesvaporware.diceparserjava.metrics.ParseEvent;
 
 public class Parser {
-    List<Token> tokens = new ArrayList<>();
+    TokenBuffer tokens;
     int pos = 0;
 
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    // Reads the buffer in place; it must not be refilled until parse() returns
+    public Parser(TokenBuffer tokens) {
         this.tokens = tokens;
         this.pos = 0;
     }
@@ -30,36 +39,60 @@ public class Parser {
     private boolean check(TokenType type) {
         if (isAtEnd())
             return false;
-        return peek().type == type;
+        return peekType() == type;
     }
 
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd())
             pos++;
-        return previous();
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.END;
+        return peekType() == TokenType.END;
     }
 
-    private Token peek() {
-        return tokens.get(pos);
+    private TokenType peekType() {
+        return tokens.type(pos);
     }
 
-    private Token previous() {
-        return tokens.get(pos - 1);
+    private TokenType previousType() {
+        return tokens.type(pos - 1);
+    }
+
+    private double previousValue() {
+        return tokens.value(pos - 1);
     }
 
     // === TOP LEVEL ===
 
     public ASTNode parse() throws Exception {
-        ASTNode ast = expression();
+        long start = Metrics.start();
+        ParseEvent event = new ParseEvent();
+        event.begin();
+
+        ASTNode ast = null;
+        Exception error = null;
+        try {
+            ast = expression();
 
-        if (!isAtEnd()) {
-            throw new Exception("Unexpected token: " + peek().toString());
+            if (!isAtEnd()) {
+                throw new Exception("Unexpected token: " + tokens.get(pos).toString());
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.expression = ast == null ? null : ASTPrinter.notation(ast);
+            event.tokens = tokens.size();
+            event.error = error == null ? null : error.getMessage();
+            event.commit();
         }
+        if (error != null)
+            throw error;
 
+        Metrics.stop(Metric.PARSE, start);
         return ast;
     }
 
@@ -103,9 +136,9 @@ public class Parser {
         ASTNode node = term();
 
         while (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token operator = previous();
+            TokenType operator = previousType();
             ASTNode right = term();
-            node = new BinaryExprNode(node, right, operator.type);
+            node = new BinaryExprNode(node, right, operator);
         }
         return node;
     }
@@ -114,9 +147,9 @@ public class Parser {
         ASTNode node = dice();
 
         while (match(TokenType.MULTIPLY, TokenType.DIVIDE)) {
-            Token operator = previous();
+            TokenType operator = previousType();
             ASTNode right = dice();
-            node = new BinaryExprNode(node, right, operator.type);
+            node = new BinaryExprNode(node, right, operator);
         }
 
         return node;
@@ -126,9 +159,9 @@ public class Parser {
         ASTNode node = factor();
 
         if (match(TokenType.DICE)) {
-            Token operator = previous();
+            TokenType operator = previousType();
             ASTNode right = factor();
-            node = new DiceExprNode(node, right, operator.type);
+            List<Modifier> modifiers = new ArrayList<>();
 
             while (match(
                     TokenType.MODIFIER_MINIMUM,
@@ -139,7 +172,7 @@ public class Parser {
                     TokenType.MODIFIER_REROLL_ADD,
                     TokenType.MODIFIER_KEEP,
                     TokenType.MODIFIER_DROP)) {
-                Token mod = previous();
+                TokenType mod = previousType();
 
                 if (!match(
                         TokenType.SELECTOR_HIGHEST,
@@ -149,10 +182,12 @@ public class Parser {
                         TokenType.SELECTOR_LITERAL))
                     throw new Exception("Expected selector after modifier");
 
-                Token selector = previous();
+                TokenType selector = previousType();
                 ASTNode modFactor = factor();
-                ((DiceExprNode) node).addModifier(new Modifier(mod.type, selector.type, modFactor));
+                modifiers.add(new Modifier(mod, selector, modFactor));
             }
+
+            node = new DiceExprNode(node, right, operator, modifiers);
         }
 
         return node;
@@ -160,9 +195,9 @@ public class Parser {
 
     private ASTNode factor() throws Exception {
         if (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token operator = previous();
+            TokenType operator = previousType();
             ASTNode right = factor();
-            return new UnaryExprNode(right, operator.type);
+            return new UnaryExprNode(right, operator);
         }
 
         if (match(TokenType.LPAREN)) {
@@ -177,10 +212,10 @@ public class Parser {
 
     private ASTNode number() throws Exception {
         if (match(TokenType.INTEGER_LITERAL))
-            return new IntegerLiteralNode((int) previous().numericValue);
+            return new IntegerLiteralNode((int) previousValue());
 
         if (match(TokenType.FLOAT_LITERAL))
-            return new FloatLiteralNode(previous().numericValue);
+            return new FloatLiteralNode((float) previousValue());
 
         throw new Exception("Expected a number");
 
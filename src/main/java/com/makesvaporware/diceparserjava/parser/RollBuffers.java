@@ -0,0 +1,21 @@
+package com.makesvaporware.diceparserjava.parser;
+
+// Scratch storage reused by every dice term an EvaluationContext rolls: the per-die arrays and sort
+// buffers of DicePool, and the face counts of DiceHistogram. Both only ever grow and are allocated
+// on first use. Not thread-safe; each context owns one, and parsed trees stay free of roll state.
+public final class RollBuffers {
+    private DicePool pool;
+    private DiceHistogram histogram;
+
+    DicePool pool() {
+        if (pool == null)
+            pool = new DicePool();
+        return pool;
+    }
+
+    DiceHistogram histogram() {
+        if (histogram == null)
+            histogram = new DiceHistogram();
+        return histogram;
+    }
+}
@@ -1,30 +1,84 @@
 package com.makesvaporware.diceparserjava.parser;
 
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
 import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
 import com.makesvaporware.diceparserjava.lexer.Token;
 import com.makesvaporware.diceparserjava.lexer.Token.TokenType;
 
 public class UnaryExprNode extends ASTNode {
-    private ASTNode child;
-    private TokenType operator;
+    private final ASTNode child;
+    private final TokenType operator;
+    private final double integerBound;
+    private final boolean integral;
 
     public UnaryExprNode(ASTNode child, TokenType operator) {
         this.child = child;
         this.operator = operator;
+        this.integerBound = operator == TokenType.PLUS || operator == TokenType.MINUS ? child.integerBound()
+                : Double.POSITIVE_INFINITY;
+        this.integral = isIntegral();
+    }
+
+    public ASTNode getChild() {
+        return child;
+    }
+
+    public TokenType getOperator() {
+        return operator;
+    }
+
+    @Override
+    public EvaluationResult evaluate(EvaluationContext context) throws Exception {
+        EvaluationResult childResult = child.evaluate(context);
+
+        if (integral)
+            return EvaluationResult.unary(applyExact(childResult.getExactValue()), Token.typeToString(operator),
+                    childResult);
+
+        switch (operator) {
+            case PLUS:
+                return EvaluationResult.unary(childResult.getValue(), "+", childResult);
+
+            case MINUS:
+                return EvaluationResult.unary(-1 * childResult.getValue(), "-", childResult);
+            default:
+                throw new Exception("Unknown unary operator: " + Token.typeToString(operator));
+        }
     }
 
     @Override
-    public EvaluationResult evaluate() throws Exception {
-        EvaluationResult childResult = child.evaluate();
+    public float evaluateValue(EvaluationContext context) throws Exception {
+        if (integral)
+            return (float) evaluateLong(context);
+
+        float childValue = child.evaluateValue(context);
 
         switch (operator) {
             case PLUS:
-                return new EvaluationResult(childResult.value,
-                        String.format("+%s", childResult.displayString));
+                return childValue;
+            case MINUS:
+                return -1 * childValue;
+            default:
+                throw new Exception("Unknown unary operator: " + Token.typeToString(operator));
+        }
+    }
 
+    @Override
+    public double integerBound() {
+        return integerBound;
+    }
+
+    @Override
+    public long evaluateLong(EvaluationContext context) throws Exception {
+        return applyExact(child.evaluateLong(context));
+    }
+
+    private long applyExact(long childValue) throws Exception {
+        switch (operator) {
+            case PLUS:
+                return childValue;
             case MINUS:
-                return new EvaluationResult(-1 * childResult.value,
-                        String.format("-%s", childResult.displayString));
+                return Math.negateExact(childValue);
             default:
                 throw new Exception("Unknown unary operator: " + Token.typeToString(operator));
         }
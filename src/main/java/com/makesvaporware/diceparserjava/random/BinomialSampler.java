@@ -0,0 +1,131 @@
+package com.makesvaporware.diceparserjava.random;
+
+// Samples how many dice land on each face without rolling them one by one. A uniform multinomial
+// is drawn as a chain of binomials: face i gets Binomial(remaining, 1 / (faces left)).
+// Binomials use inversion for small means and Hormann's BTRS transformed rejection otherwise
+// ("The generation of binomial random variates", 1993), so each draw is O(1) in expectation.
+final class BinomialSampler {
+    // Below this many dice per face, rolling each die is cheaper than a binomial per face
+    private static final int DICE_PER_FACE_THRESHOLD = 16;
+    private static final double INVERSION_MAX_MEAN = 10;
+
+    private static final int LOG_FACTORIAL_TABLE_SIZE = 256;
+    private static final double[] LOG_FACTORIALS = new double[LOG_FACTORIAL_TABLE_SIZE];
+    private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2 * Math.PI);
+
+    static {
+        for (int k = 1; k < LOG_FACTORIAL_TABLE_SIZE; k++)
+            LOG_FACTORIALS[k] = LOG_FACTORIALS[k - 1] + Math.log(k);
+    }
+
+    private BinomialSampler() {
+    }
+
+    static void rollFaceCounts(RandomSource random, long[] counts, int offset, long numDice, int numSides) {
+        if (numDice < (long) numSides * DICE_PER_FACE_THRESHOLD) {
+            for (long i = 0; i < numDice; i++)
+                counts[offset + random.rollDie(numSides) - 1]++;
+            return;
+        }
+
+        long remaining = numDice;
+        for (int face = 0; face < numSides - 1 && remaining > 0; face++) {
+            long count = binomial(random, remaining, 1.0 / (numSides - face));
+            counts[offset + face] += count;
+            remaining -= count;
+        }
+        counts[offset + numSides - 1] += remaining;
+    }
+
+    static long binomial(RandomSource random, long n, double p) {
+        if (n <= 0 || p <= 0)
+            return 0;
+        if (p >= 1)
+            return n;
+
+        // Both methods assume p <= 0.5
+        if (p > 0.5)
+            return n - binomial(random, n, 1 - p);
+
+        if (n * p < INVERSION_MAX_MEAN)
+            return binomialInversion(random, n, p);
+        return binomialBtrs(random, n, p);
+    }
+
+    // Walks the CDF from 0 using the pmf recurrence; expected n * p + 1 steps
+    private static long binomialInversion(RandomSource random, long n, double p) {
+        double q = 1 - p;
+        double s = p / q;
+        double a = (n + 1) * s;
+        double r0 = Math.exp(n * Math.log1p(-p));
+
+        while (true) {
+            double u = random.nextDouble();
+            double r = r0;
+            long x = 0;
+
+            while (u > r && x <= n) {
+                u -= r;
+                x++;
+                r *= a / x - s;
+            }
+
+            // Rounding can leave u above the remaining mass; redraw rather than return n + 1
+            if (x <= n)
+                return x;
+        }
+    }
+
+    private static long binomialBtrs(RandomSource random, long n, double p) {
+        double q = 1 - p;
+        double spq = Math.sqrt(n * p * q);
+        double b = 1.15 + 2.53 * spq;
+        double a = -0.0873 + 0.0248 * b + 0.01 * p;
+        double c = n * p + 0.5;
+        double alpha = (2.83 + 5.1 / b) * spq;
+        double vr = 0.92 - 4.2 / b;
+        double urvr = 0.86 * vr;
+        long m = (long) Math.floor((n + 1) * p);
+        double lpq = Math.log(p / q);
+        double h = logFactorial(m) + logFactorial(n - m);
+
+        while (true) {
+            double v = random.nextDouble();
+            double u;
+
+            // Fast acceptance from the inner box
+            if (v <= urvr) {
+                u = v / vr - 0.43;
+                return (long) Math.floor((2 * a / (0.5 - Math.abs(u)) + b) * u + c);
+            }
+
+            if (v >= vr) {
+                u = random.nextDouble() - 0.5;
+            } else {
+                u = v / vr - 0.93;
+                u = Math.signum(u) * 0.5 - u;
+                v = random.nextDouble() * vr;
+            }
+
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + c);
+            if (k < 0 || k > n)
+                continue;
+
+            v = Math.log(v * alpha / (a / (us * us) + b));
+            if (v <= h - logFactorial(k) - logFactorial(n - k) + (k - m) * lpq)
+                return k;
+        }
+    }
+
+    // ln(k!), from a table for small k and Stirling's series beyond it
+    static double logFactorial(long k) {
+        if (k < LOG_FACTORIAL_TABLE_SIZE)
+            return LOG_FACTORIALS[(int) k];
+
+        double x = k + 1.0;
+        double x2 = x * x;
+        return (x - 0.5) * Math.log(x) - x + HALF_LOG_TWO_PI
+                + (1.0 / 12 - (1.0 / 360 - 1.0 / (1260 * x2)) / x2) / x;
+    }
+}
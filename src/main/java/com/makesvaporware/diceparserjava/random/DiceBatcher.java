@@ -0,0 +1,94 @@
+package com.makesvaporware.diceparserjava.random;
+
+import java.util.random.RandomGenerator;
+
+// Rolls several dice from each 64-bit draw (Brackett-Rozinsky & Lemire, "Batched Ranged Random
+// Integer Generation"). Multiplying the word by each bound in turn peels off one die from the
+// high bits, and the leftover low word decides whether the whole batch must be redrawn to stay
+// unbiased. Batches are sized so their product stays below 2^48, which keeps redraws rare.
+final class DiceBatcher {
+    private static final long MAX_BATCH_PRODUCT = 1L << 48;
+
+    private DiceBatcher() {
+    }
+
+    static void rollDice(RandomGenerator generator, int[] dest, int offset, int count, int numSides) {
+        if (numSides == 1) {
+            for (int i = 0; i < count; i++)
+                dest[offset + i] = 1;
+            return;
+        }
+
+        if ((numSides & (numSides - 1)) == 0) {
+            rollPowerOfTwo(generator, dest, offset, count, numSides);
+            return;
+        }
+
+        int perBatch = 0;
+        long product = 1;
+        while (product <= MAX_BATCH_PRODUCT / numSides) {
+            product *= numSides;
+            perBatch++;
+        }
+
+        if (perBatch <= 1) {
+            for (int i = 0; i < count; i++)
+                dest[offset + i] = 1 + generator.nextInt(numSides);
+            return;
+        }
+
+        int i = 0;
+        while (count - i >= perBatch) {
+            rollBatch(generator, dest, offset + i, perBatch, numSides, product);
+            i += perBatch;
+        }
+
+        // Carry the remainder over into one smaller batch
+        int remaining = count - i;
+        if (remaining > 0) {
+            long remainingProduct = 1;
+            for (int j = 0; j < remaining; j++)
+                remainingProduct *= numSides;
+            rollBatch(generator, dest, offset + i, remaining, numSides, remainingProduct);
+        }
+    }
+
+    // Power-of-two dice need no rejection: each die is just the next few bits of the word
+    private static void rollPowerOfTwo(RandomGenerator generator, int[] dest, int offset, int count, int numSides) {
+        int bits = Integer.numberOfTrailingZeros(numSides);
+        int perWord = 64 / bits;
+        int mask = numSides - 1;
+        int i = 0;
+
+        while (i < count) {
+            long word = generator.nextLong();
+            int end = Math.min(count, i + perWord);
+            for (; i < end; i++) {
+                dest[offset + i] = ((int) word & mask) + 1;
+                word >>>= bits;
+            }
+        }
+    }
+
+    private static void rollBatch(RandomGenerator generator, int[] dest, int offset, int count, int numSides,
+            long product) {
+        long low = extract(generator.nextLong(), dest, offset, count, numSides);
+
+        if (Long.compareUnsigned(low, product) < 0) {
+            // 2^64 mod product
+            long threshold = Long.remainderUnsigned(-product, product);
+            while (Long.compareUnsigned(low, threshold) < 0)
+                low = extract(generator.nextLong(), dest, offset, count, numSides);
+        }
+    }
+
+    private static long extract(long word, int[] dest, int offset, int count, int numSides) {
+        for (int i = 0; i < count; i++) {
+            // High 64 bits of the unsigned 128-bit product word * numSides
+            long high = Math.multiplyHigh(word, numSides) + ((word >> 63) & numSides);
+            word *= numSides;
+            dest[offset + i] = (int) high + 1;
+        }
+        return word;
+    }
+}
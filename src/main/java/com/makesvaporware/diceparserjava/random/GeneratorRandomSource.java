@@ -0,0 +1,45 @@
+package com.makesvaporware.diceparserjava.random;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.JumpableGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+class GeneratorRandomSource implements RandomSource {
+    private final RandomGenerator generator;
+
+    GeneratorRandomSource(RandomGenerator generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public int rollDie(int numSides) {
+        return 1 + generator.nextInt(numSides);
+    }
+
+    @Override
+    public void rollDice(int[] dest, int offset, int count, int numSides) {
+        DiceBatcher.rollDice(generator, dest, offset, count, numSides);
+    }
+
+    @Override
+    public double nextDouble() {
+        return generator.nextDouble();
+    }
+
+    @Override
+    public RandomSource split() {
+        if (generator instanceof SplittableGenerator)
+            return new GeneratorRandomSource(((SplittableGenerator) generator).split());
+
+        // Jumpable generators hand out the current stream and skip ahead themselves
+        if (generator instanceof JumpableGenerator) {
+            JumpableGenerator jumpable = (JumpableGenerator) generator;
+            RandomGenerator copy = jumpable.copy();
+            jumpable.jump();
+            return new GeneratorRandomSource(copy);
+        }
+
+        return new GeneratorRandomSource(new SplittableRandom(generator.nextLong()));
+    }
+}
@@ -0,0 +1,53 @@
+package com.makesvaporware.diceparserjava.random;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+// Source of die rolls for an evaluation. Implementations other than threadLocal() are not
+// thread-safe; give each thread its own instance via split().
+public interface RandomSource {
+    String DEFAULT_ALGORITHM = "L64X128MixRandom";
+
+    // Uniform value in [1, numSides]
+    int rollDie(int numSides);
+
+    // Fills dest[offset, offset + count) with independent rolls of a numSides die
+    default void rollDice(int[] dest, int offset, int count, int numSides) {
+        for (int i = 0; i < count; i++)
+            dest[offset + i] = rollDie(numSides);
+    }
+
+    // Uniform value in [0, 1)
+    double nextDouble();
+
+    // Adds numDice independent rolls of a numSides die to counts, where counts[offset + v - 1] is the
+    // number of dice showing v. Large counts are drawn as one multinomial sample in O(numSides).
+    default void rollFaceCounts(long[] counts, int offset, long numDice, int numSides) {
+        BinomialSampler.rollFaceCounts(this, counts, offset, numDice, numSides);
+    }
+
+    // Returns an independent source, e.g. for handing to another worker thread.
+    // Splitting is deterministic, so a seeded source and its splits replay exactly.
+    RandomSource split();
+
+    static RandomSource threadLocal() {
+        return ThreadLocalRandomSource.INSTANCE;
+    }
+
+    static RandomSource seeded(long seed) {
+        return of(DEFAULT_ALGORITHM, seed);
+    }
+
+    // Any java.util.random algorithm name, e.g. "L64X128MixRandom", "Xoshiro256PlusPlus" or "SplittableRandom"
+    static RandomSource of(String algorithm, long seed) {
+        if ("SplittableRandom".equals(algorithm))
+            return new GeneratorRandomSource(new SplittableRandom(seed));
+
+        return new GeneratorRandomSource(RandomGeneratorFactory.of(algorithm).create(seed));
+    }
+
+    static RandomSource of(RandomGenerator generator) {
+        return new GeneratorRandomSource(generator);
+    }
+}
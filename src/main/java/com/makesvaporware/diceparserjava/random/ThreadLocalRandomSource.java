@@ -0,0 +1,31 @@
+package com.makesvaporware.diceparserjava.random;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Unseeded default: every thread rolls from its own ThreadLocalRandom
+class ThreadLocalRandomSource implements RandomSource {
+    static final ThreadLocalRandomSource INSTANCE = new ThreadLocalRandomSource();
+
+    private ThreadLocalRandomSource() {
+    }
+
+    @Override
+    public int rollDie(int numSides) {
+        return 1 + ThreadLocalRandom.current().nextInt(numSides);
+    }
+
+    @Override
+    public void rollDice(int[] dest, int offset, int count, int numSides) {
+        DiceBatcher.rollDice(ThreadLocalRandom.current(), dest, offset, count, numSides);
+    }
+
+    @Override
+    public double nextDouble() {
+        return ThreadLocalRandom.current().nextDouble();
+    }
+
+    @Override
+    public RandomSource split() {
+        return this;
+    }
+}
@@ -0,0 +1,34 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+
+// Text coloured with ANSI escape codes: max faces in bold green, 1s in bold red, and discarded
+// dice dimmed and struck through
+public class AnsiRenderer extends TextRenderer {
+    public static final AnsiRenderer FULL = new AnsiRenderer(Integer.MAX_VALUE);
+
+    private static final String DISCARDED = "\u001b[2;9m";
+    private static final String MAX_FACE = "\u001b[1;32m";
+    private static final String MIN_FACE = "\u001b[1;31m";
+    private static final String RESET = "\u001b[0m";
+
+    public AnsiRenderer(int maxDicePerTerm) {
+        super(maxDicePerTerm);
+    }
+
+    @Override
+    protected void openDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (!kept)
+            out.append(DISCARDED);
+        if (face == numSides)
+            out.append(MAX_FACE);
+        else if (face == 1)
+            out.append(MIN_FACE);
+    }
+
+    @Override
+    protected void closeDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (!kept || face == numSides || face == 1)
+            out.append(RESET);
+    }
+}
@@ -0,0 +1,114 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+import com.makesvaporware.diceparserjava.evaluator.RollLog;
+import com.makesvaporware.diceparserjava.json.Json;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+
+// Writes the result tree as JSON objects, e.g. for "4d6kh3 + 2":
+//
+//   {"type":"binary","operator":"+","value":15,
+//    "left":{"type":"dice","notation":"4d6kh3","value":13,"dice":[{"value":6,"kept":true},{"value":2,"kept":false},...]},
+//    "right":{"type":"literal","text":"2","value":2}}
+//
+// Unary results carry "operator" and "operand", parenthesized ones "inner". Dice whose face was changed
+// by a minimum/maximum modifier also have "original", and dice that exploded have "exploded":true.
+public class JsonRenderer implements ResultRenderer {
+    public static final JsonRenderer INSTANCE = new JsonRenderer();
+
+    @Override
+    public void render(EvaluationResult result, Appendable out) throws IOException {
+        long start = Metrics.start();
+        write(result, out);
+        Metrics.stop(Metric.DISPLAY, start);
+    }
+
+    private void write(EvaluationResult result, Appendable out) throws IOException {
+        out.append("{\"type\":");
+        switch (result.getKind()) {
+            case LITERAL:
+                out.append("\"literal\",\"text\":");
+                Json.writeString(result.getText(), out);
+                writeValue(result, out);
+                break;
+            case DICE:
+                out.append("\"dice\",\"notation\":");
+                Json.writeString(result.getText(), out);
+                writeValue(result, out);
+                out.append(",\"dice\":");
+                writeDice(result.getRolls(), out);
+                break;
+            case UNARY:
+                out.append("\"unary\",\"operator\":");
+                Json.writeString(result.getText(), out);
+                writeValue(result, out);
+                out.append(",\"operand\":");
+                write(result.getChild(), out);
+                break;
+            case BINARY:
+                out.append("\"binary\",\"operator\":");
+                Json.writeString(result.getText(), out);
+                writeValue(result, out);
+                out.append(",\"left\":");
+                write(result.getLeft(), out);
+                out.append(",\"right\":");
+                write(result.getRight(), out);
+                break;
+            case PARENTHESIZED:
+                out.append("\"parenthesized\"");
+                writeValue(result, out);
+                out.append(",\"inner\":");
+                write(result.getChild(), out);
+                break;
+            default:
+                break;
+        }
+        out.append('}');
+    }
+
+    private static void writeValue(EvaluationResult result, Appendable out) throws IOException {
+        out.append(",\"value\":");
+        writeTotal(result, out);
+    }
+
+    // Exact totals in full, however large, rather than as a rounded float
+    public static void writeTotal(EvaluationResult result, Appendable out) throws IOException {
+        if (result.isExact())
+            out.append(Long.toString(result.getExactValue()));
+        else
+            Json.writeNumber(result.getValue(), out);
+    }
+
+    private static void writeDice(RollLog rolls, Appendable out) throws IOException {
+        out.append('[');
+        for (int i = 0; i < rolls.size(); i++) {
+            if (i > 0)
+                out.append(',');
+
+            out.append("{\"value\":");
+            TextRenderer.appendInt(out, rolls.value(i));
+            out.append(rolls.isKept(i) ? ",\"kept\":true" : ",\"kept\":false");
+
+            boolean changed = false;
+            boolean exploded = false;
+            for (int event = rolls.eventStart(i); event < rolls.eventEnd(i); event++) {
+                if (rolls.eventType(event) == RollLog.EVENT_EXPLODE)
+                    exploded = true;
+                else
+                    changed = true;
+            }
+
+            if (changed) {
+                out.append(",\"original\":");
+                TextRenderer.appendInt(out, rolls.originalValue(i));
+            }
+            if (exploded)
+                out.append(",\"exploded\":true");
+            out.append('}');
+        }
+        out.append(']');
+    }
+}
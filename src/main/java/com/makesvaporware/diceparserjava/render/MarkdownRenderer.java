@@ -0,0 +1,29 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+
+// Discord-style Markdown: 1s and max faces in bold, discarded dice struck through,
+// e.g. "4d6kh3 (**6**, ~~2~~, 3, 5) + 2"
+public class MarkdownRenderer extends TextRenderer {
+    public static final MarkdownRenderer FULL = new MarkdownRenderer(Integer.MAX_VALUE);
+
+    public MarkdownRenderer(int maxDicePerTerm) {
+        super(maxDicePerTerm);
+    }
+
+    @Override
+    protected void openDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (!kept)
+            out.append("~~");
+        if (face == 1 || face == numSides)
+            out.append("**");
+    }
+
+    @Override
+    protected void closeDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (face == 1 || face == numSides)
+            out.append("**");
+        if (!kept)
+            out.append("~~");
+    }
+}
@@ -0,0 +1,25 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+
+// Markup-free text for logs and terminals without escape codes. Discarded dice are bracketed,
+// e.g. "4d6kh3 (6, [2], 3, 5) + 2"
+public class PlainTextRenderer extends TextRenderer {
+    public static final PlainTextRenderer FULL = new PlainTextRenderer(Integer.MAX_VALUE);
+
+    public PlainTextRenderer(int maxDicePerTerm) {
+        super(maxDicePerTerm);
+    }
+
+    @Override
+    protected void openDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (!kept)
+            out.append('[');
+    }
+
+    @Override
+    protected void closeDie(Appendable out, int face, int numSides, boolean kept) throws IOException {
+        if (!kept)
+            out.append(']');
+    }
+}
@@ -0,0 +1,37 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+
+// Writes an EvaluationResult as it walks the tree, so output can go straight into a response or file
+// without building a String per node
+public interface ResultRenderer {
+    void render(EvaluationResult result, Appendable out) throws IOException;
+
+    default String render(EvaluationResult result) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            render(result, sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    // "markdown", "plain", "ansi" or "json", rendering every die
+    static ResultRenderer forName(String name) {
+        switch (name) {
+            case "markdown":
+                return MarkdownRenderer.FULL;
+            case "plain":
+                return PlainTextRenderer.FULL;
+            case "ansi":
+                return AnsiRenderer.FULL;
+            case "json":
+                return JsonRenderer.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown display format: " + name);
+        }
+    }
+}
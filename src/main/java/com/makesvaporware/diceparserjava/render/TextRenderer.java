@@ -0,0 +1,106 @@
+package com.makesvaporware.diceparserjava.render;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+import com.makesvaporware.diceparserjava.evaluator.RollLog;
+import com.makesvaporware.diceparserjava.metrics.Metric;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+
+// Layout shared by the text formats, e.g. "4d6kh3 (6, 2, 3, 5) + 2", with value changes as "2 -> 3" and
+// explosions as "6!". Subclasses only decide how each die is decorated. A renderer with a dice limit
+// shows the first dice of each term followed by e.g. "... 9,950 more", so chat output stays short
+// however big the pool.
+public abstract class TextRenderer implements ResultRenderer {
+    private final int maxDicePerTerm;
+
+    protected TextRenderer(int maxDicePerTerm) {
+        if (maxDicePerTerm <= 0)
+            throw new IllegalArgumentException("maxDicePerTerm must be positive");
+
+        this.maxDicePerTerm = maxDicePerTerm;
+    }
+
+    public int getMaxDicePerTerm() {
+        return maxDicePerTerm;
+    }
+
+    @Override
+    public void render(EvaluationResult result, Appendable out) throws IOException {
+        long start = Metrics.start();
+        write(result, out);
+        Metrics.stop(Metric.DISPLAY, start);
+    }
+
+    // Called around the faces of each die; face is its final value
+    protected abstract void openDie(Appendable out, int face, int numSides, boolean kept) throws IOException;
+
+    protected abstract void closeDie(Appendable out, int face, int numSides, boolean kept) throws IOException;
+
+    private void write(EvaluationResult result, Appendable out) throws IOException {
+        switch (result.getKind()) {
+            case LITERAL:
+                out.append(result.getText());
+                break;
+            case DICE:
+                out.append(result.getText()).append(" (");
+                writeDice(result.getRolls(), out);
+                out.append(')');
+                break;
+            case UNARY:
+                out.append(result.getText());
+                write(result.getChild(), out);
+                break;
+            case BINARY:
+                write(result.getLeft(), out);
+                out.append(' ').append(result.getText()).append(' ');
+                write(result.getRight(), out);
+                break;
+            case PARENTHESIZED:
+                out.append('(');
+                write(result.getChild(), out);
+                out.append(')');
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void writeDice(RollLog rolls, Appendable out) throws IOException {
+        int shown = Math.min(rolls.size(), maxDicePerTerm);
+
+        for (int i = 0; i < shown; i++) {
+            if (i > 0)
+                out.append(", ");
+
+            int face = rolls.value(i);
+            openDie(out, face, rolls.getNumSides(), rolls.isKept(i));
+
+            appendInt(out, rolls.originalValue(i));
+            for (int event = rolls.eventStart(i); event < rolls.eventEnd(i); event++) {
+                if (rolls.eventType(event) == RollLog.EVENT_EXPLODE) {
+                    out.append('!');
+                } else {
+                    out.append(" -> ");
+                    appendInt(out, rolls.eventValue(event));
+                }
+            }
+
+            closeDie(out, face, rolls.getNumSides(), rolls.isKept(i));
+        }
+
+        if (shown < rolls.size())
+            out.append(String.format(Locale.ROOT, ", ... %,d more", rolls.size() - shown));
+    }
+
+    // Appendable has no append(int); StringBuilder's avoids a String per die
+    static void appendInt(Appendable out, int value) throws IOException {
+        if (out instanceof StringBuilder)
+            ((StringBuilder) out).append(value);
+        else if (value >= 0 && value < 10)
+            out.append((char) ('0' + value));
+        else
+            out.append(Integer.toString(value));
+    }
+}
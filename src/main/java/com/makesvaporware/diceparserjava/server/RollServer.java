@@ -0,0 +1,437 @@
+package com.makesvaporware.diceparserjava.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.makesvaporware.diceparserjava.cache.ExpressionCache;
+import com.makesvaporware.diceparserjava.cost.CostAnalyzer;
+import com.makesvaporware.diceparserjava.cost.CostBudget;
+import com.makesvaporware.diceparserjava.cost.CostEstimate;
+import com.makesvaporware.diceparserjava.distribution.Distribution;
+import com.makesvaporware.diceparserjava.distribution.DistributionCalculator;
+import com.makesvaporware.diceparserjava.evaluator.CancellationToken;
+import com.makesvaporware.diceparserjava.evaluator.EvaluationCancelledException;
+import com.makesvaporware.diceparserjava.evaluator.EvaluationResult;
+import com.makesvaporware.diceparserjava.evaluator.Evaluator;
+import com.makesvaporware.diceparserjava.json.Json;
+import com.makesvaporware.diceparserjava.metrics.InMemoryMetricsRecorder;
+import com.makesvaporware.diceparserjava.metrics.Metrics;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.render.JsonRenderer;
+import com.makesvaporware.diceparserjava.render.MarkdownRenderer;
+import com.makesvaporware.diceparserjava.render.ResultRenderer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// JSON roll service over the JDK's built-in HTTP server.
+//
+//   POST /roll           {"expression": "4d6kh3"}             -> {"expression", "total", "display"}
+//   POST /roll/batch     {"expressions": ["1d20", "2d6 + 1"]} -> {"results": [{...} or {"error"}]}
+//   GET  /distribution?expression=2d6                        -> {"expression", "mean", ..., "outcomes"}
+//   GET  /metrics[?format=json]                              -> Prometheus text, or JSON
+//
+// /metrics is only served while an InMemoryMetricsRecorder is installed with Metrics.set().
+// /roll also accepts the bare expression as a text body. Failures are {"error": "..."} with a 4xx/5xx status.
+// Requests run on virtual threads when the JDK has them and a fixed pool otherwise. Single rolls are
+// cheap and bounded by the limits, so they run on the request thread and stop themselves at the
+// timeout; batches and distributions run on a compute pool so the request can give up after it.
+public class RollServer {
+    // The JDK server writes headers and body separately, so with Nagle's algorithm on, every keep-alive
+    // response waits out the client's delayed ACK (~40 ms). Read once when the first server starts.
+    static {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService computeExecutor;
+    private final ExpressionCache cache;
+    private final DistributionCalculator calculator;
+    private final ServerLimits limits;
+    private final CostBudget budget;
+
+    public RollServer(InetSocketAddress address, ExpressionCache cache, ServerLimits limits) throws IOException {
+        this(address, cache, new DistributionCalculator(), limits);
+    }
+
+    public RollServer(InetSocketAddress address, ExpressionCache cache, DistributionCalculator calculator,
+            ServerLimits limits) throws IOException {
+        this.cache = cache;
+        this.calculator = calculator;
+        this.limits = limits;
+        this.budget = new CostBudget(limits.getMaxDice());
+        this.requestExecutor = newRequestExecutor();
+        this.computeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/roll", exchange -> handle(exchange, "POST", this::roll));
+        server.createContext("/roll/batch", exchange -> handle(exchange, "POST", this::rollBatch));
+        server.createContext("/distribution", exchange -> handle(exchange, "GET", this::distribution));
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Waits up to delaySeconds for in-flight exchanges to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+        computeExecutor.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    // === HANDLERS ===
+
+    private Object roll(HttpExchange exchange) throws Exception {
+        String body = readBody(exchange);
+        String expression = body.stripLeading().startsWith("{") ? expressionField(Json.parseObject(body)) : body;
+
+        return rollResult(expression, displayRenderer(exchange));
+    }
+
+    private Object rollBatch(HttpExchange exchange) throws Exception {
+        ResultRenderer renderer = displayRenderer(exchange);
+        Object expressions = Json.parse(readBody(exchange));
+        if (expressions instanceof Map)
+            expressions = ((Map<?, ?>) expressions).get("expressions");
+        if (!(expressions instanceof List))
+            throw new HttpError(400, "Expected an \"expressions\" array");
+
+        List<?> list = (List<?>) expressions;
+        if (list.size() > limits.getMaxBatchSize())
+            throw new HttpError(413, "Batch is larger than " + limits.getMaxBatchSize() + " expressions");
+
+        // Parse and estimate the whole batch up front so an oversized batch is rejected before any rolling
+        List<Object> results = new ArrayList<>(list.size());
+        List<ASTNode> roots = new ArrayList<>(list.size());
+        CostEstimate cost = CostEstimate.ZERO;
+
+        for (Object item : list) {
+            ASTNode root = null;
+            try {
+                if (!(item instanceof String))
+                    throw new Exception("Expected an expression string");
+                root = parse((String) item);
+                CostEstimate estimate = CostAnalyzer.analyze(root);
+                if (estimate.exceedsDiceLimit())
+                    throw new Exception("Too many dice rolled.");
+                cost = cost.plus(estimate);
+            } catch (HttpError e) {
+                throw e;
+            } catch (Exception e) {
+                root = null;
+                results.add(errorResult(e.getMessage()));
+            }
+            roots.add(root);
+            if (root != null)
+                results.add(null);
+        }
+
+        checkBudget(cost);
+
+        // The deadline also stops the compute thread, not just the wait for it
+        CancellationToken cancellation = newCancellation();
+        return withTimeout(cancellation, () -> {
+            for (int i = 0; i < roots.size(); i++) {
+                ASTNode root = roots.get(i);
+                if (root == null)
+                    continue;
+
+                String expression = (String) list.get(i);
+                try {
+                    results.set(i, rollResult(expression, root, cancellation, renderer));
+                } catch (EvaluationCancelledException e) {
+                    throw e;
+                } catch (Exception e) {
+                    results.set(i, errorResult(e.getMessage()));
+                }
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("results", results);
+            return response;
+        });
+    }
+
+    private Object distribution(HttpExchange exchange) throws Exception {
+        String expression = queryParameter(exchange, "expression");
+        if (expression == null)
+            throw new HttpError(400, "Missing \"expression\" query parameter");
+
+        ASTNode root = parse(expression);
+        Distribution distribution = withTimeout(null, () -> calculator.calculate(root));
+
+        List<Object> outcomes = new ArrayList<>(distribution.size());
+        for (int i = 0; i < distribution.size(); i++) {
+            Map<String, Object> outcome = new LinkedHashMap<>();
+            outcome.put("total", distribution.getOutcome(i));
+            outcome.put("probability", distribution.getProbability(i));
+            outcomes.add(outcome);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("expression", expression);
+        response.put("mean", distribution.mean());
+        response.put("stddev", distribution.standardDeviation());
+        response.put("min", distribution.min());
+        response.put("max", distribution.max());
+        response.put("outcomes", outcomes);
+        return response;
+    }
+
+    private Object metrics(HttpExchange exchange) throws Exception {
+        if (!(Metrics.get() instanceof InMemoryMetricsRecorder))
+            throw new HttpError(404, "Metrics are not enabled");
+
+        InMemoryMetricsRecorder recorder = (InMemoryMetricsRecorder) Metrics.get();
+        StringBuilder sb = new StringBuilder();
+        if ("json".equals(queryParameter(exchange, "format"))) {
+            recorder.writeJson(sb);
+            return new TextResponse(JSON_CONTENT_TYPE, sb.toString());
+        }
+
+        recorder.writePrometheus(sb);
+        return new TextResponse("text/plain; version=0.0.4; charset=utf-8", sb.toString());
+    }
+
+    // === HELPERS ===
+
+    private Map<String, Object> rollResult(String expression, ResultRenderer renderer) throws Exception {
+        ASTNode root = parse(expression);
+        checkBudget(CostAnalyzer.analyze(root));
+
+        return rollResult(expression, root, newCancellation(), renderer);
+    }
+
+    private void checkBudget(CostEstimate cost) throws HttpError {
+        try {
+            budget.check(cost);
+        } catch (Exception e) {
+            throw new HttpError(413, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> rollResult(String expression, ASTNode root, CancellationToken cancellation,
+            ResultRenderer renderer) throws Exception {
+        EvaluationResult result = new Evaluator(root, cancellation).evaluate();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("expression", expression);
+        response.put("total", result.isExact() ? (Object) result.getExactValue() : (Object) result.getValue());
+        response.put("display", display(result, renderer));
+        return response;
+    }
+
+    // Rendered straight into the response when it is written; text formats become a JSON string
+    private static Json.Writable display(EvaluationResult result, ResultRenderer renderer) {
+        if (renderer instanceof JsonRenderer)
+            return out -> renderer.render(result, out);
+
+        return out -> {
+            out.append('"');
+            renderer.render(result, Json.escaping(out));
+            out.append('"');
+        };
+    }
+
+    // ?format=markdown (the default), plain, ansi or json
+    private static ResultRenderer displayRenderer(HttpExchange exchange) throws HttpError {
+        String format = queryParameter(exchange, "format");
+        if (format == null)
+            return MarkdownRenderer.FULL;
+
+        try {
+            return ResultRenderer.forName(format);
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> errorResult(String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", message);
+        return response;
+    }
+
+    private ASTNode parse(String expression) throws Exception {
+        if (expression.length() > limits.getMaxExpressionLength())
+            throw new HttpError(413, "Expression is longer than " + limits.getMaxExpressionLength() + " characters");
+        if (expression.isBlank())
+            throw new HttpError(400, "Expression is empty");
+
+        return cache.get(expression);
+    }
+
+    private HttpError timedOut() {
+        return new HttpError(503, "Request timed out after " + limits.getTimeoutMillis() + " ms");
+    }
+
+    private static String expressionField(Map<String, Object> fields) throws HttpError {
+        if (!(fields.get("expression") instanceof String))
+            throw new HttpError(400, "Missing \"expression\" string");
+        return (String) fields.get("expression");
+    }
+
+    // Runs work on the compute pool and stops waiting for it after the request timeout
+    private CancellationToken newCancellation() {
+        return new CancellationToken(limits.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // cancellation, if not null, is cancelled along with the work when the timeout passes
+    private <T> T withTimeout(CancellationToken cancellation, Callable<T> work) throws Exception {
+        Future<T> future = computeExecutor.submit(work);
+        try {
+            return future.get(limits.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (cancellation != null)
+                cancellation.cancel();
+            future.cancel(true);
+            throw timedOut();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException, HttpError {
+        int maxBytes = limits.getMaxBodyBytes();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(maxBytes + 1);
+            if (body.length > maxBytes)
+                throw new HttpError(413, "Request body is larger than " + maxBytes + " bytes");
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return null;
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name))
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    // === EXCHANGE ===
+
+    private interface Handler {
+        Object handle(HttpExchange exchange) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        int status = 200;
+        Object response;
+
+        try {
+            if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath()))
+                throw new HttpError(404, "Not found");
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                throw new HttpError(405, "Method not allowed");
+            }
+
+            response = handler.handle(exchange);
+        } catch (HttpError e) {
+            status = e.status;
+            response = errorResult(e.getMessage());
+        } catch (EvaluationCancelledException e) {
+            status = 503;
+            response = errorResult(timedOut().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            response = errorResult("Server is shutting down");
+        } catch (Exception e) {
+            // Bad expressions and evaluation errors, e.g. "Division by zero"
+            status = 400;
+            response = errorResult(e.getMessage());
+        } catch (StackOverflowError e) {
+            status = 400;
+            response = errorResult("Expression is nested too deeply.");
+        }
+
+        String contentType = JSON_CONTENT_TYPE;
+        String text;
+        if (response instanceof TextResponse) {
+            contentType = ((TextResponse) response).contentType;
+            text = ((TextResponse) response).text;
+        } else {
+            try {
+                text = Json.toJson(response);
+            } catch (StackOverflowError e) {
+                // Displays are rendered here, recursing as deep as evaluation did
+                status = 400;
+                text = Json.toJson(errorResult("Expression is nested too deeply."));
+            }
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // A handler result that is sent as-is rather than encoded as JSON
+    private static class TextResponse {
+        final String contentType;
+        final String text;
+
+        TextResponse(String contentType, String text) {
+            this.contentType = contentType;
+            this.text = text;
+        }
+    }
+
+    // Ends a request with a specific status instead of the default 400
+    private static class HttpError extends Exception {
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Virtual threads need Java 21, while this build targets 17, so look the factory up at runtime
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
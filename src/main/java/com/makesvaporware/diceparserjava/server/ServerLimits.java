@@ -0,0 +1,58 @@
+package com.makesvaporware.diceparserjava.server;
+
+// Per-request limits enforced by RollServer
+public class ServerLimits {
+    public static final int DEFAULT_MAX_EXPRESSION_LENGTH = 1000;
+    public static final int DEFAULT_MAX_DICE = 10_000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+    private final int maxExpressionLength;
+    private final int maxDice;
+    private final int maxBatchSize;
+    private final long timeoutMillis;
+
+    public ServerLimits() {
+        this(DEFAULT_MAX_EXPRESSION_LENGTH, DEFAULT_MAX_DICE, DEFAULT_MAX_BATCH_SIZE, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    // maxDice bounds the dice one request is expected to roll, explosions and rerolls included,
+    // summed over every expression in a batch;
+    // timeoutMillis bounds how long a request may roll or wait for its result
+    public ServerLimits(int maxExpressionLength, int maxDice, int maxBatchSize, long timeoutMillis) {
+        if (maxExpressionLength <= 0)
+            throw new IllegalArgumentException("maxExpressionLength must be positive");
+        if (maxDice <= 0)
+            throw new IllegalArgumentException("maxDice must be positive");
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("timeoutMillis must be positive");
+
+        this.maxExpressionLength = maxExpressionLength;
+        this.maxDice = maxDice;
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getMaxExpressionLength() {
+        return maxExpressionLength;
+    }
+
+    public int getMaxDice() {
+        return maxDice;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // Largest request body that can hold a full batch of maximum-length expressions
+    int getMaxBodyBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, 64L + (long) maxBatchSize * (maxExpressionLength * 6L + 8));
+    }
+}
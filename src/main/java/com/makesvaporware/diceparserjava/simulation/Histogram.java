@@ -0,0 +1,92 @@
+package com.makesvaporware.diceparserjava.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.makesvaporware.diceparserjava.distribution.Distribution;
+
+// Counts of simulated totals. Whole-number totals (the common case) are counted in a dense array
+// that grows around the values seen so far; anything else falls back to a map.
+class Histogram {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_DENSE_RANGE = 1 << 22;
+
+    private long[] counts = new long[0];
+    private long offset;
+    private final Map<Double, Long> sparse = new HashMap<>();
+    private long trials;
+
+    void add(double value) {
+        trials++;
+
+        long integral = (long) value;
+        if (integral == value && addDense(integral, 1))
+            return;
+
+        sparse.merge(value + 0.0, 1L, Long::sum);
+    }
+
+    void merge(Histogram other) {
+        trials += other.trials;
+
+        for (int i = 0; i < other.counts.length; i++) {
+            long count = other.counts[i];
+            if (count != 0 && !addDense(other.offset + i, count))
+                sparse.merge((double) (other.offset + i), count, Long::sum);
+        }
+
+        for (Map.Entry<Double, Long> entry : other.sparse.entrySet())
+            sparse.merge(entry.getKey(), entry.getValue(), Long::sum);
+    }
+
+    long trials() {
+        return trials;
+    }
+
+    Distribution toDistribution() {
+        Map<Double, Double> pmf = new HashMap<>();
+
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0)
+                pmf.put((double) (offset + i), (double) counts[i] / trials);
+        }
+
+        for (Map.Entry<Double, Long> entry : sparse.entrySet())
+            pmf.merge(entry.getKey(), (double) entry.getValue() / trials, Double::sum);
+
+        return Distribution.fromMap(pmf);
+    }
+
+    // Returns false if the value is too far from the current range to be counted densely
+    private boolean addDense(long value, long count) {
+        if (counts.length == 0) {
+            counts = new long[INITIAL_CAPACITY];
+            offset = value - INITIAL_CAPACITY / 2;
+        }
+
+        long index = value - offset;
+
+        if (index < 0 || index >= counts.length) {
+            long newStart = Math.min(offset, value);
+            long newEnd = Math.max(offset + counts.length, value + 1);
+            long range = newEnd - newStart;
+
+            if (range > MAX_DENSE_RANGE)
+                return false;
+
+            // Grow geometrically, leaving the spare room on the side that overflowed
+            long capacity = Math.min(MAX_DENSE_RANGE, Math.max(range, (long) counts.length * 2));
+            if (value < offset)
+                newStart = newEnd - capacity;
+            long[] grown = new long[(int) capacity];
+            System.arraycopy(counts, 0, grown, (int) (offset - newStart), counts.length);
+
+            counts = grown;
+            offset = newStart;
+            index = value - offset;
+        }
+
+        counts[(int) index] += count;
+        return true;
+    }
+}
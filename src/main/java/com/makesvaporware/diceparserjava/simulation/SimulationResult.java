@@ -0,0 +1,55 @@
+package com.makesvaporware.diceparserjava.simulation;
+
+import com.makesvaporware.diceparserjava.distribution.Distribution;
+
+public class SimulationResult {
+    private final long trials;
+    private final Distribution distribution;
+    private final long elapsedNanos;
+
+    SimulationResult(long trials, Distribution distribution, long elapsedNanos) {
+        this.trials = trials;
+        this.distribution = distribution;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getTrials() {
+        return trials;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // Empirical distribution of the simulated totals
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    public double mean() {
+        return distribution.mean();
+    }
+
+    public double standardDeviation() {
+        return distribution.standardDeviation();
+    }
+
+    public double min() {
+        return distribution.min();
+    }
+
+    public double max() {
+        return distribution.max();
+    }
+
+    public double percentile(double percent) {
+        return distribution.percentile(percent);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("trials=%d, mean=%.4f, stddev=%.4f, min=%s, max=%s, p5=%s, p50=%s, p95=%s (%.1f ms)",
+                trials, mean(), standardDeviation(), min(), max(), percentile(5), percentile(50), percentile(95),
+                elapsedNanos / 1e6);
+    }
+}
@@ -0,0 +1,123 @@
+package com.makesvaporware.diceparserjava.simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.makesvaporware.diceparserjava.compiler.CompiledRoll;
+import com.makesvaporware.diceparserjava.compiler.ExpressionCompiler;
+import com.makesvaporware.diceparserjava.evaluator.EvaluationContext;
+import com.makesvaporware.diceparserjava.parser.ASTNode;
+import com.makesvaporware.diceparserjava.parser.Optimizer;
+import com.makesvaporware.diceparserjava.random.RandomSource;
+
+// Runs many total-only evaluations of a parsed expression across a ForkJoinPool.
+// Trials are split in half until a task is at most batchSize trials, each leaf fills its own
+// histogram, and histograms are merged on the way back up. Every split also splits the random
+// source, so a seeded run gives the same result regardless of how tasks land on threads.
+public class Simulator {
+    public static final int DEFAULT_BATCH_SIZE = 16_384;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+
+    public Simulator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    public Simulator(ForkJoinPool pool, int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public SimulationResult simulate(ASTNode root, long trials) throws Exception {
+        return simulate(root, trials, RandomSource.threadLocal());
+    }
+
+    // Runs of at least one batch compile the expression first; compiling costs about as much as a
+    // few thousand interpreted trials
+    public SimulationResult simulate(ASTNode root, long trials, RandomSource random) throws Exception {
+        root = Optimizer.optimize(root);
+        CompiledRoll roll = CompiledRoll.interpreted(root);
+        if (trials >= batchSize) {
+            try {
+                roll = compiler.compile(root);
+            } catch (Exception e) {
+                // Too large to compile; interpret instead
+            }
+        }
+
+        return simulate(roll, trials, random);
+    }
+
+    public SimulationResult simulate(CompiledRoll roll, long trials) throws Exception {
+        return simulate(roll, trials, RandomSource.threadLocal());
+    }
+
+    public SimulationResult simulate(CompiledRoll roll, long trials, RandomSource random) throws Exception {
+        if (trials <= 0)
+            throw new IllegalArgumentException("trials must be positive");
+
+        long start = System.nanoTime();
+        Histogram histogram;
+
+        try {
+            histogram = pool.invoke(new SimulationTask(roll, trials, random));
+        } catch (TrialFailedException e) {
+            throw (Exception) e.getCause();
+        }
+
+        return new SimulationResult(trials, histogram.toDistribution(), System.nanoTime() - start);
+    }
+
+    private class SimulationTask extends RecursiveTask<Histogram> {
+        private final CompiledRoll roll;
+        private final long trials;
+        private final RandomSource random;
+
+        SimulationTask(CompiledRoll roll, long trials, RandomSource random) {
+            this.roll = roll;
+            this.trials = trials;
+            this.random = random;
+        }
+
+        @Override
+        protected Histogram compute() {
+            if (trials <= batchSize)
+                return runTrials();
+
+            long half = trials / 2;
+            SimulationTask left = new SimulationTask(roll, half, random.split());
+            SimulationTask right = new SimulationTask(roll, trials - half, random);
+
+            left.fork();
+            Histogram histogram = right.compute();
+            histogram.merge(left.join());
+            return histogram;
+        }
+
+        private Histogram runTrials() {
+            Histogram histogram = new Histogram();
+            EvaluationContext context = new EvaluationContext(random);
+
+            try {
+                for (long i = 0; i < trials; i++)
+                    histogram.add(roll.roll(context));
+            } catch (Exception e) {
+                throw new TrialFailedException(e);
+            }
+
+            return histogram;
+        }
+    }
+
+    // Carries a checked evaluation error out of the fork-join tasks
+    private static class TrialFailedException extends RuntimeException {
+        TrialFailedException(Exception cause) {
+            super(cause);
+        }
+    }
+}